@@ -0,0 +1,30 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.RedisBloomFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_BLOG_KEY;
+import static com.hmdp.utils.RedisConstants.BLOOM_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+
+@Configuration
+public class BloomFilterConfig {
+
+    @Value("${hmdp.bloom.expected-insertions:1000000}")
+    private long expectedInsertions;
+    @Value("${hmdp.bloom.fpp:0.01}")
+    private double fpp;
+
+    @Bean
+    public RedisBloomFilter shopBloomFilter(StringRedisTemplate stringRedisTemplate) {
+        return new RedisBloomFilter(BLOOM_SHOP_KEY, CACHE_SHOP_KEY, expectedInsertions, fpp, stringRedisTemplate);
+    }
+
+    @Bean
+    public RedisBloomFilter blogBloomFilter(StringRedisTemplate stringRedisTemplate) {
+        return new RedisBloomFilter(BLOOM_BLOG_KEY, null, expectedInsertions, fpp, stringRedisTemplate);
+    }
+}
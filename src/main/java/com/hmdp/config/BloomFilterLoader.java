@@ -0,0 +1,116 @@
+package com.hmdp.config;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.hmdp.service.IBlogService;
+import com.hmdp.service.IShopService;
+import com.hmdp.utils.RedisBloomFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 启动后从数据库分页加载店铺和笔记id到布隆过滤器
+ * 之后定时增量加载新的id，覆盖不经过service新增的数据(如直接执行sql)
+ * 自增id的提交顺序与分配顺序不一致，增量加载时回退一段id重新扫描，并定期全量重新加载
+ */
+@Slf4j
+@Component
+public class BloomFilterLoader implements ApplicationRunner {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Autowired
+    private IShopService shopService;
+    @Autowired
+    private IBlogService blogService;
+    @Autowired
+    private RedisBloomFilter shopBloomFilter;
+    @Autowired
+    private RedisBloomFilter blogBloomFilter;
+
+    //增量加载间隔(s)
+    @Value("${hmdp.bloom.refresh-interval:60}")
+    private long refreshInterval;
+
+    //增量加载时回退重新扫描的id数量，覆盖加载时还未提交的较小id
+    @Value("${hmdp.bloom.overlap:1000}")
+    private long overlap;
+    //全量重新加载间隔(s)
+    @Value("${hmdp.bloom.full-reload-interval:3600}")
+    private long fullReloadInterval;
+
+    //每个过滤器已加载的最大id
+    private final Map<RedisBloomFilter, Long> lastIds = new ConcurrentHashMap<>();
+    //每个过滤器上次全量加载的时间
+    private final Map<RedisBloomFilter, Long> fullLoadTimes = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService loader = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "bloom-filter-loader"));
+
+    @Override
+    public void run(ApplicationArguments args) {
+        loader.scheduleWithFixedDelay(() -> {
+            load(shopBloomFilter, shopService);
+            load(blogBloomFilter, blogService);
+        }, 0, refreshInterval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        loader.shutdown();
+    }
+
+    /**
+     * 从上次加载的最大id回退overlap后继续加载；到达全量加载间隔时从头加载
+     */
+    private <T> void load(RedisBloomFilter filter, IService<T> service) {
+        long begin = System.currentTimeMillis();
+        long maxId = lastIds.getOrDefault(filter, 0L);
+        boolean full = begin - fullLoadTimes.getOrDefault(filter, 0L) >= TimeUnit.SECONDS.toMillis(fullReloadInterval);
+        long lastId = full ? 0L : Math.max(0L, maxId - overlap);
+        long count = 0;
+        try {
+            while (true) {
+                List<Long> ids = service.listObjs(new QueryWrapper<T>()
+                        .select("id")
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("limit " + BATCH_SIZE), o -> ((Number) o).longValue());
+                if (ids.isEmpty()) {
+                    break;
+                }
+                filter.addAll(ids);
+                count += ids.size();
+                lastId = ids.get(ids.size() - 1);
+                lastIds.merge(filter, lastId, Math::max);
+            }
+            if (full) {
+                fullLoadTimes.put(filter, begin);
+            }
+            if (filter.isReady()) {
+                if (full) {
+                    log.info("布隆过滤器全量加载: {}, 数量: {}, 耗时: {}ms", filter, count, System.currentTimeMillis() - begin);
+                } else if (lastIds.getOrDefault(filter, 0L) > maxId) {
+                    log.info("布隆过滤器增量加载: {}, 最大id: {}", filter, lastIds.get(filter));
+                }
+                return;
+            }
+            filter.markReady();
+            log.info("布隆过滤器加载完成: {}, 数量: {}, 耗时: {}ms", filter, count, System.currentTimeMillis() - begin);
+        } catch (Exception e) {
+            log.error("布隆过滤器加载失败: {}", filter, e);
+        }
+    }
+}
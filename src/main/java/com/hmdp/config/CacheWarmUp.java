@@ -0,0 +1,133 @@
+package com.hmdp.config;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.RedisUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_TTL;
+
+/**
+ * 启动时预热缓存：分页读取店铺类型和店铺，店铺类型按版本写入，店铺按页通过pipeline按版本写入逻辑过期缓存
+ * ApplicationRunner执行完成后应用才进入ACCEPTING_TRAFFIC(就绪)状态，因此在这里等待预热完成，
+ * 超时后不再等待，预热在后台继续
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "hmdp.cache.warm-up.enabled", havingValue = "true", matchIfMissing = true)
+public class CacheWarmUp implements ApplicationRunner {
+
+    @Autowired
+    private IShopService shopService;
+    @Autowired
+    private IShopTypeService shopTypeService;
+    @Autowired
+    private RedisUtils redisUtils;
+
+    //每页读取条数
+    @Value("${hmdp.cache.warm-up.page-size:500}")
+    private int pageSize;
+    //等待预热完成的最长时间(s)
+    @Value("${hmdp.cache.warm-up.timeout:60}")
+    private long timeout;
+    //逻辑过期时间(s)
+    @Value("${hmdp.cache.warm-up.logical-expire:10}")
+    private long logicalExpire;
+    //逻辑过期时间最大随机偏移(s)
+    @Value("${hmdp.cache.warm-up.expire-jitter:10}")
+    private long expireJitter;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long begin = System.currentTimeMillis();
+        CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+            warmUpShopTypes();
+            warmUpShops();
+        }, r -> new Thread(r, "cache-warm-up").start());
+        try {
+            future.get(timeout, TimeUnit.SECONDS);
+            log.info("缓存预热完成, 耗时: {}ms", System.currentTimeMillis() - begin);
+        } catch (TimeoutException e) {
+            log.warn("缓存预热超过{}s未完成, 开始接收流量, 预热在后台继续", timeout);
+        } catch (ExecutionException e) {
+            log.error("缓存预热失败", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void warmUpShopTypes() {
+        long begin = System.currentTimeMillis();
+        //查询数据库前读取版本，查询期间店铺类型变更时不写入旧数据
+        String version = redisUtils.readVersion(CACHE_SHOP_TYPE_KEY);
+        List<ShopType> types = new ArrayList<>();
+        long lastId = 0;
+        while (true) {
+            List<ShopType> page = shopTypeService.query()
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + pageSize)
+                    .list();
+            if (page.isEmpty()) {
+                break;
+            }
+            types.addAll(page);
+            lastId = page.get(page.size() - 1).getId();
+        }
+        if (!types.isEmpty()) {
+            redisUtils.setIfUnchanged(CACHE_SHOP_TYPE_KEY, types, version, CACHE_SHOP_TYPE_TTL, TimeUnit.MINUTES);
+        }
+        log.info("店铺类型缓存预热完成, 数量: {}, 耗时: {}ms", types.size(), System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 每页先只读取id，读取缓存版本后再按id查询数据，查询期间被更新并删除的缓存不会被旧数据覆盖
+     */
+    private void warmUpShops() {
+        long begin = System.currentTimeMillis();
+        long lastId = 0;
+        long count = 0;
+        while (true) {
+            List<Long> ids = shopService.listObjs(new QueryWrapper<Shop>()
+                    .select("id")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + pageSize), o -> ((Number) o).longValue());
+            if (ids.isEmpty()) {
+                break;
+            }
+            List<String> keys = ids.stream().map(id -> CACHE_SHOP_KEY + id).collect(Collectors.toList());
+            Map<String, String> versions = redisUtils.readVersions(keys);
+            Map<String, Shop> values = new LinkedHashMap<>(ids.size() * 4 / 3 + 1);
+            for (Shop shop : shopService.listByIds(ids)) {
+                values.put(CACHE_SHOP_KEY + shop.getId(), shop);
+            }
+            redisUtils.setBatchWithLogicalExpire(values, versions, logicalExpire, expireJitter, TimeUnit.SECONDS);
+            count += values.size();
+            lastId = ids.get(ids.size() - 1);
+            log.debug("店铺缓存预热进度: {}, 最后id: {}, 耗时: {}ms", count, lastId, System.currentTimeMillis() - begin);
+        }
+        log.info("店铺缓存预热完成, 数量: {}, 耗时: {}ms", count, System.currentTimeMillis() - begin);
+    }
+}
@@ -0,0 +1,79 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.CacheRebuildExecutor;
+import com.hmdp.utils.CompressingRedisSerializer;
+import com.hmdp.utils.GcraRateLimiter;
+import com.hmdp.utils.RateLimiter;
+import com.hmdp.utils.RedisUtils;
+import com.hmdp.utils.SessionCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定时输出缓存、会话和限流的运行指标，每个来源一行日志
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression("${hmdp.metrics.log-interval:60} > 0")
+public class MetricsReporter {
+
+    @Autowired
+    private RedisUtils redisUtils;
+    @Autowired
+    private CacheRebuildExecutor cacheRebuildExecutor;
+    @Autowired
+    private CompressingRedisSerializer cacheValueSerializer;
+    @Autowired
+    private SessionCache sessionCache;
+    @Autowired
+    private RateLimiter rateLimiter;
+    @Autowired
+    private GcraRateLimiter gcraRateLimiter;
+
+    //输出间隔(s)
+    @Value("${hmdp.metrics.log-interval:60}")
+    private long logInterval;
+
+    private final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "metrics-reporter"));
+
+    @PostConstruct
+    private void init() {
+        reporter.scheduleWithFixedDelay(this::report, logInterval, logInterval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        reporter.shutdown();
+    }
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("localCache", redisUtils.localCacheStats());
+        metrics.put("cacheRebuild", cacheRebuildExecutor.metrics());
+        metrics.put("compression", cacheValueSerializer.metrics());
+        metrics.put("session", sessionCache.metrics());
+        metrics.put("loginRateLimit", rateLimiter.metrics());
+        metrics.put("rateLimit", gcraRateLimiter.metrics());
+        return metrics;
+    }
+
+    private void report() {
+        try {
+            metrics().forEach((name, value) -> log.info("运行指标 {}: {}", name, value));
+        } catch (Exception e) {
+            log.error("输出运行指标异常", e);
+        }
+    }
+}
@@ -2,10 +2,9 @@ package com.hmdp.config;
 
 import com.hmdp.interceptor.LoginInterceptor;
 import com.hmdp.interceptor.RefreshTokenInterceptor;
+import com.hmdp.utils.SessionManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -13,7 +12,7 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 public class MvcConfig implements WebMvcConfigurer {
 
     @Autowired
-    private RedisTemplate redisTemplate;
+    private SessionManager sessionManager;
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
@@ -28,7 +27,7 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/upload/**",
                         "/voucher/**"
                 ).order(1);
-        registry.addInterceptor(new RefreshTokenInterceptor(redisTemplate))
+        registry.addInterceptor(new RefreshTokenInterceptor(sessionManager))
                 .addPathPatterns("/**")
                 .order(0);
 
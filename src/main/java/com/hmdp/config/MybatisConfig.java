@@ -3,9 +3,19 @@ package com.hmdp.config;
 import com.baomidou.mybatisplus.annotation.DbType;
 import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
 import com.baomidou.mybatisplus.extension.plugins.inner.PaginationInnerInterceptor;
+import com.hmdp.interceptor.CacheOutboxInterceptor;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.ShopTypeMapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_KEY;
+
 @Configuration
 public class MybatisConfig {
     @Bean
@@ -14,4 +24,17 @@ public class MybatisConfig {
         interceptor.addInnerInterceptor(new PaginationInnerInterceptor(DbType.MYSQL));
         return interceptor;
     }
+
+    /**
+     * 店铺和店铺类型数据变更时写入缓存失效发件箱，由CacheOutboxPoller删除缓存
+     */
+    @Bean
+    @ConditionalOnProperty(name = "hmdp.cache.outbox.enabled", havingValue = "true", matchIfMissing = true)
+    public CacheOutboxInterceptor cacheOutboxInterceptor() {
+        Map<String, String> prefixByMapper = new HashMap<>();
+        prefixByMapper.put(ShopMapper.class.getName(), CACHE_SHOP_KEY);
+        //店铺类型整表缓存为一个key
+        prefixByMapper.put(ShopTypeMapper.class.getName(), CACHE_SHOP_TYPE_KEY);
+        return new CacheOutboxInterceptor(prefixByMapper);
+    }
 }
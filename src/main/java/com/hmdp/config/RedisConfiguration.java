@@ -5,21 +5,58 @@ import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hmdp.utils.CompactRedisSerializer;
+import com.hmdp.utils.CompressingRedisSerializer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
 public class RedisConfiguration {
 
+    //是否以紧凑二进制格式写入缓存，所有节点升级到可读取二进制格式后再开启
+    @Value("${hmdp.redis.compact-write:false}")
+    private boolean compactWrite;
+    //是否压缩较大的缓存value，所有节点升级到可解压后再开启
+    @Value("${hmdp.redis.compress.enabled:false}")
+    private boolean compressEnabled;
+    //超过该字节数才压缩
+    @Value("${hmdp.redis.compress.threshold:1024}")
+    private int compressThreshold;
+
     @Bean
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory redisConnectionFactory) {
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory redisConnectionFactory,
+                                                       CompressingRedisSerializer cacheValueSerializer) {
         RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
         redisTemplate.setConnectionFactory(redisConnectionFactory);
 
+        // 设置序列化器，value可读取json、紧凑二进制和压缩三种格式
+        GenericJackson2JsonRedisSerializer serializer = jsonRedisSerializer();
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(cacheValueSerializer);
+        redisTemplate.setHashKeySerializer(new StringRedisSerializer());
+        redisTemplate.setHashValueSerializer(serializer);
+        redisTemplate.setDefaultSerializer(serializer);
+
+        redisTemplate.afterPropertiesSet();
+        return redisTemplate;
+    }
+
+    /**
+     * 缓存value序列化器，单独声明以便读取压缩指标
+     */
+    @Bean
+    public CompressingRedisSerializer cacheValueSerializer() {
+        return new CompressingRedisSerializer(
+                new CompactRedisSerializer(jsonRedisSerializer(), compactWrite), compressEnabled, compressThreshold);
+    }
+
+    private GenericJackson2JsonRedisSerializer jsonRedisSerializer() {
         // 创建并配置 ObjectMapper
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.registerModule(new JavaTimeModule()); // 支持 Java8 时间类型
@@ -29,16 +66,16 @@ public class RedisConfiguration {
                 objectMapper.getPolymorphicTypeValidator(),
                 ObjectMapper.DefaultTyping.NON_FINAL
         );
+        return new GenericJackson2JsonRedisSerializer(objectMapper);
+    }
 
-        // 设置序列化器
-        GenericJackson2JsonRedisSerializer serializer = new GenericJackson2JsonRedisSerializer(objectMapper);
-        redisTemplate.setKeySerializer(new StringRedisSerializer());
-        redisTemplate.setValueSerializer(serializer);
-        redisTemplate.setHashKeySerializer(new StringRedisSerializer());
-        redisTemplate.setHashValueSerializer(serializer);
-        redisTemplate.setDefaultSerializer(serializer);
-
-        redisTemplate.afterPropertiesSet();
-        return redisTemplate;
+    /**
+     * redis发布订阅监听容器
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        return container;
     }
 }
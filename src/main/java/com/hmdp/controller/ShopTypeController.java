@@ -1,17 +1,14 @@
 package com.hmdp.controller;
 
 
-import com.hmdp.dto.Result;
-import com.hmdp.entity.ShopType;
 import com.hmdp.service.IShopTypeService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import javax.annotation.Resource;
-import java.util.List;
-
 /**
  * <p>
  * 前端控制器
@@ -26,9 +23,13 @@ public class ShopTypeController {
     @Autowired
     private IShopTypeService typeService;
 
+    /**
+     * 直接返回本地快照中序列化好的响应
+     */
     @GetMapping("list")
-    public Result queryTypeList() {
-        List<ShopType> typeList = typeService.queryList();
-        return Result.ok(typeList);
+    public ResponseEntity<byte[]> queryTypeList() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(typeService.queryListJson());
     }
 }
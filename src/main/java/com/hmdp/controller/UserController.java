@@ -7,6 +7,7 @@ import com.hmdp.entity.User;
 import com.hmdp.entity.UserInfo;
 import com.hmdp.service.IUserInfoService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.LoginRateLimiter;
 import com.hmdp.utils.RegexUtils;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
@@ -14,6 +15,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 
 @Slf4j
@@ -27,11 +29,17 @@ public class UserController {
     @Autowired
     private IUserInfoService userInfoService;
 
+    @Autowired
+    private LoginRateLimiter loginRateLimiter;
+
     /**
      * 发送手机验证码
      */
     @PostMapping("code")
-    public Result sendCode(@RequestParam("phone") String phone, HttpSession session) {
+    public Result sendCode(@RequestParam("phone") String phone, HttpSession session, HttpServletRequest request) {
+        //限流
+        loginRateLimiter.checkCode(phone, request.getRemoteAddr());
+
         //发送短信验证码并保存
         return userService.sendCode(phone, session);
     }
@@ -41,7 +49,10 @@ public class UserController {
      * @param loginForm 登录参数，包含手机号、验证码；或者手机号、密码
      */
     @PostMapping("/login")
-    public Result login(@RequestBody LoginFormDTO loginForm, HttpSession session){
+    public Result login(@RequestBody LoginFormDTO loginForm, HttpSession session, HttpServletRequest request){
+        //限流
+        loginRateLimiter.checkLogin(loginForm.getPhone(), request.getRemoteAddr());
+
         return userService.login(loginForm, session);
     }
 
@@ -50,9 +61,17 @@ public class UserController {
      * @return 无
      */
     @PostMapping("/logout")
-    public Result logout(){
-        //实现登出功能
-        return Result.ok();
+    public Result logout(@RequestHeader(value = "authorization", required = false) String token){
+        return userService.logout(token);
+    }
+
+    /**
+     * 退出全部登录
+     * @return 无
+     */
+    @PostMapping("/logout/all")
+    public Result logoutAll(){
+        return userService.logoutAll();
     }
 
     @GetMapping("/me")
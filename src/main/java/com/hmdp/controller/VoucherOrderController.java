@@ -4,6 +4,7 @@ package com.hmdp.controller;
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.RateLimit;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -20,6 +21,9 @@ public class VoucherOrderController {
     /**
      * 秒杀卷下单
      */
+    @RateLimit(scope = RateLimit.Scope.USER, rate = 5, burst = 10)
+    @RateLimit(scope = RateLimit.Scope.PATH, rate = 2000)
+    @RateLimit(scope = RateLimit.Scope.GLOBAL, rate = 5000)
     @PostMapping("seckill/{id}")
     public Result seckillVoucher(@PathVariable("id") Long voucherId) {
         return voucherOrderService.seckillVoucher(voucherId);
@@ -0,0 +1,170 @@
+package com.hmdp.interceptor;
+
+import com.baomidou.mybatisplus.core.conditions.AbstractWrapper;
+import com.baomidou.mybatisplus.core.conditions.ISqlSegment;
+import com.baomidou.mybatisplus.core.enums.SqlKeyword;
+import com.baomidou.mybatisplus.core.metadata.TableInfo;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.baomidou.mybatisplus.core.toolkit.Constants;
+import com.baomidou.mybatisplus.core.toolkit.ReflectionKit;
+import com.hmdp.entity.CacheOutbox;
+import com.hmdp.mapper.CacheOutboxMapper;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 写入缓存失效发件箱
+ * 被跟踪的mapper执行增删改后，使用同一个Executor写入发件箱，与业务数据在同一事务中提交
+ * 能取到主键时记录具体的缓存key，条件更新的条件中有主键的等值或in条件时取其中的主键，
+ * 取不到主键时记录缓存前缀(失效该前缀下的全部缓存)
+ * 不以:结尾的映射表示整表缓存为一个key，任何变更都失效该key
+ */
+@Intercepts(@Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}))
+public class CacheOutboxInterceptor implements Interceptor {
+
+    private static final String OUTBOX_INSERT = CacheOutboxMapper.class.getName() + ".insert";
+
+    //条件构造器中的参数占位符，如 #{ew.paramNameValuePairs.MPGENVAL1}
+    private static final Pattern WRAPPER_PARAM = Pattern.compile("paramNameValuePairs\\.(\\w+)");
+
+    //mapper全限定名 -> 缓存key前缀或整表缓存key
+    private final Map<String, String> prefixByMapper;
+
+    public CacheOutboxInterceptor(Map<String, String> prefixByMapper) {
+        this.prefixByMapper = prefixByMapper;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
+        String mapper = ms.getId().substring(0, ms.getId().lastIndexOf('.'));
+        String prefix = prefixByMapper.get(mapper);
+        //未跟踪或没有修改数据
+        if (prefix == null || Integer.valueOf(0).equals(result)) {
+            return result;
+        }
+
+        Executor executor = (Executor) invocation.getTarget();
+        MappedStatement outboxInsert = ms.getConfiguration().getMappedStatement(OUTBOX_INSERT);
+        for (String key : cacheKeys(mapper, prefix, invocation.getArgs()[1])) {
+            executor.update(outboxInsert, new CacheOutbox().setCacheKey(key));
+        }
+        return result;
+    }
+
+    /**
+     * 根据参数解析受影响的缓存key
+     */
+    private Set<String> cacheKeys(String mapper, String prefix, Object parameter) {
+        Set<String> keys = new LinkedHashSet<>();
+        if (!prefix.endsWith(":")) {
+            keys.add(prefix);
+            return keys;
+        }
+        if (parameter instanceof Map) {
+            Map<?, ?> params = (Map<?, ?>) parameter;
+            if (params.containsKey(Constants.WRAPPER) && params.get(Constants.WRAPPER) != null) {
+                //条件更新/删除
+                Collection<?> ids = wrapperIds(params.get(Constants.WRAPPER), keyColumn(mapper));
+                if (ids == null) {
+                    keys.add(prefix);
+                } else {
+                    ids.forEach(id -> keys.add(prefix + id));
+                }
+            } else if (params.containsKey(Constants.ENTITY)) {
+                //updateById
+                addEntityKey(keys, prefix, params.get(Constants.ENTITY));
+            } else if (params.containsKey(Constants.COLLECTION)) {
+                //deleteBatchIds
+                for (Object id : (Collection<?>) params.get(Constants.COLLECTION)) {
+                    keys.add(prefix + id);
+                }
+            } else {
+                //deleteByMap等
+                keys.add(prefix);
+            }
+        } else if (parameter != null && TableInfoHelper.getTableInfo(parameter.getClass()) != null) {
+            //insert
+            addEntityKey(keys, prefix, parameter);
+        } else if (parameter != null) {
+            //deleteById
+            keys.add(prefix + parameter);
+        } else {
+            keys.add(prefix);
+        }
+        return keys;
+    }
+
+    /**
+     * 从条件构造器中解析主键，如 update().setSql("sold = sold + 1").eq("id", id)
+     * 只解析顶层的主键等值或in条件，顶层有OR时受影响的行不限于这些主键，返回null
+     * @return 主键列表，无法确定时返回null
+     */
+    private Collection<?> wrapperIds(Object wrapper, String keyColumn) {
+        if (!(wrapper instanceof AbstractWrapper)) {
+            return null;
+        }
+        AbstractWrapper<?, ?, ?> abstractWrapper = (AbstractWrapper<?, ?, ?>) wrapper;
+        //实体作为查询条件
+        Object entity = abstractWrapper.getEntity();
+        TableInfo tableInfo = entity == null ? null : TableInfoHelper.getTableInfo(entity.getClass());
+        Object entityId = tableInfo == null ? null : ReflectionKit.getFieldValue(entity, tableInfo.getKeyProperty());
+        if (entityId != null) {
+            return Collections.singletonList(entityId);
+        }
+
+        List<String> segments = new ArrayList<>();
+        for (ISqlSegment segment : abstractWrapper.getExpression().getNormal()) {
+            segments.add(segment.getSqlSegment());
+        }
+        if (segments.contains(SqlKeyword.OR.getSqlSegment())) {
+            return null;
+        }
+        for (int i = 0; i + 2 < segments.size(); i++) {
+            String keyword = segments.get(i + 1);
+            if (!keyColumn.equals(segments.get(i))
+                    || !(SqlKeyword.EQ.getSqlSegment().equals(keyword) || SqlKeyword.IN.getSqlSegment().equals(keyword))) {
+                continue;
+            }
+            List<Object> ids = new ArrayList<>();
+            Matcher matcher = WRAPPER_PARAM.matcher(segments.get(i + 2));
+            while (matcher.find()) {
+                ids.add(abstractWrapper.getParamNameValuePairs().get(matcher.group(1)));
+            }
+            if (!ids.isEmpty() && !ids.contains(null)) {
+                return ids;
+            }
+        }
+        return null;
+    }
+
+    private static String keyColumn(String mapper) {
+        for (TableInfo tableInfo : TableInfoHelper.getTableInfos()) {
+            if (mapper.equals(tableInfo.getCurrentNamespace()) && tableInfo.getKeyColumn() != null) {
+                return tableInfo.getKeyColumn();
+            }
+        }
+        return "id";
+    }
+
+    private void addEntityKey(Set<String> keys, String prefix, Object entity) {
+        TableInfo tableInfo = entity == null ? null : TableInfoHelper.getTableInfo(entity.getClass());
+        Object id = tableInfo == null ? null : ReflectionKit.getFieldValue(entity, tableInfo.getKeyProperty());
+        keys.add(id == null ? prefix : prefix + id);
+    }
+}
@@ -17,4 +17,6 @@ public interface IShopService extends IService<Shop> {
     Result queryById(Long id);
 
     Result update(Shop shop);
+
+    Result queryShopByType(Integer typeId, Integer current);
 }
@@ -16,4 +16,9 @@ import java.util.List;
 public interface IShopTypeService extends IService<ShopType> {
 
     List<ShopType> queryList();
+
+    /**
+     * 序列化好的店铺类型列表响应，返回的数组不能修改
+     */
+    byte[] queryListJson();
 }
@@ -11,6 +11,7 @@ import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.RedisBloomFilter;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -30,9 +31,27 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     private IUserService userService;
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
+    @Autowired
+    private RedisBloomFilter blogBloomFilter;
+
+    /**
+     * 保存笔记，同时加入布隆过滤器
+     */
+    @Override
+    public boolean save(Blog blog) {
+        boolean success = super.save(blog);
+        if (success) {
+            blogBloomFilter.add(blog.getId());
+        }
+        return success;
+    }
 
     @Override
     public Result queryById(Long id) {
+        //布隆过滤器判断不存在，不查询数据库
+        if (!blogBloomFilter.mightContain(id)) {
+            return Result.fail("笔记不存在");
+        }
         Blog blog = getById(id);
         if (blog == null) {
             return Result.fail("笔记不存在");
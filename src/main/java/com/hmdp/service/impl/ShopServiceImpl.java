@@ -1,23 +1,28 @@
 package com.hmdp.service.impl;
 
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.CacheRebuildExecutor;
+import com.hmdp.utils.RedisBloomFilter;
 import com.hmdp.utils.RedisData;
 import com.hmdp.utils.RedisUtils;
+import com.hmdp.utils.SystemConstants;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
 import static com.hmdp.utils.RedisConstants.LOCK_SHOP_KEY;
@@ -33,13 +38,27 @@ import static com.hmdp.utils.RedisConstants.LOCK_SHOP_KEY;
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
-    //创建线程池--10个线程
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
-
     @Autowired
     private RedisUtils redisUtils;
+    //线程池，用于重建缓存
+    @Autowired
+    private CacheRebuildExecutor cacheRebuildExecutor;
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
+    @Autowired
+    private RedisBloomFilter shopBloomFilter;
+
+    /**
+     * 保存店铺，同时加入布隆过滤器
+     */
+    @Override
+    public boolean save(Shop shop) {
+        boolean success = super.save(shop);
+        if (success) {
+            shopBloomFilter.add(shop.getId());
+        }
+        return success;
+    }
 
     /**
      * 查询商铺
@@ -66,6 +85,27 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return Result.ok(shop);
     }
 
+    /**
+     * 根据商铺类型分页查询商铺，数据库只查询id，商铺数据从缓存批量获取
+     */
+    @Override
+    public Result queryShopByType(Integer typeId, Integer current) {
+        //分页查询id
+        Page<Shop> page = query()
+                .select("id")
+                .eq("type_id", typeId)
+                .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
+        List<Long> ids = page.getRecords().stream().map(Shop::getId).collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+
+        //批量查询缓存
+        List<Shop> shops = redisUtils.queryBatch(CACHE_SHOP_KEY, ids,
+                this::listByIds, Shop::getId, 10L, TimeUnit.SECONDS, Shop.class);
+        return Result.ok(shops);
+    }
+
     /**
      * 互斥锁解决缓存击穿
      */
@@ -161,16 +201,18 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             return shop;
         }
 
-        //获取到锁，开启新线程，查询数据库，重建缓存，释放锁，返回旧数据
-        CACHE_REBUILD_EXECUTOR.submit(() -> {
+        //获取到锁，提交重建任务，查询数据库，重建缓存，释放锁，返回旧数据
+        boolean submitted = cacheRebuildExecutor.submit(shopKey, () -> {
             try {
                 this.saveShop2Redis(id, 3600L);
-            } catch (Exception e) {
-                log.error("异步刷新缓存失败: {}", e);
             } finally {
                 unLock(lockKey, lock);
             }
         });
+        //已在重建或队列已满，返回旧数据
+        if (!submitted) {
+            unLock(lockKey, lock);
+        }
         return shop;
     }
 
@@ -222,9 +264,9 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         }
         updateById(shop);
 
-        //2.删除缓存
+        //2.事务提交后删除缓存并延迟双删，同时清除所有节点的本地缓存
         String key = CACHE_SHOP_KEY + id;
-        redisTemplate.delete(key);
+        redisUtils.deleteAfterCommit(key);
         return Result.ok();
     }
 
@@ -1,49 +1,165 @@
 package com.hmdp.service.impl;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.RedisUtils;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_TTL;
+import static com.hmdp.utils.RedisConstants.CACHE_VERSION_KEY;
 
 /**
  * <p>
  *  服务实现类
+ *  店铺类型列表保存为本地不可变快照(包含序列化好的响应)，查询时不访问redis和数据库
+ *  店铺类型变更时缓存版本加1并通过redis发布失效消息，收到消息后重新加载快照；定时检查版本，防止消息丢失
  * </p>
  *
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
 
     @Autowired
     private RedisTemplate redisTemplate;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisUtils redisUtils;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    //定时检查版本的间隔(s)
+    @Value("${hmdp.cache.shop-type.check-interval:30}")
+    private long checkInterval;
+
+    private volatile Snapshot snapshot;
+
+    private final ScheduledExecutorService versionChecker = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "shop-type-version-checker"));
+
+    @PostConstruct
+    private void init() {
+        //收到店铺类型缓存失效消息，重新加载快照
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            if (CACHE_SHOP_TYPE_KEY.equals(new String(message.getBody(), StandardCharsets.UTF_8))) {
+                refreshQuietly();
+            }
+        }, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        versionChecker.scheduleWithFixedDelay(() -> {
+            Snapshot current = snapshot;
+            if (current == null || !Objects.equals(current.version, readVersion())) {
+                refreshQuietly();
+            }
+        }, 0, checkInterval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        versionChecker.shutdown();
+    }
 
     @Override
     public List<ShopType> queryList() {
+        return currentSnapshot().types;
+    }
+
+    @Override
+    public byte[] queryListJson() {
+        return currentSnapshot().json;
+    }
+
+    private Snapshot currentSnapshot() {
+        Snapshot current = snapshot;
+        //快照尚未加载，同步加载
+        return current != null ? current : refresh();
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.error("加载店铺类型快照失败", e);
+        }
+    }
+
+    /**
+     * 先读取版本再加载数据，加载期间再次变更时版本不一致，下次检查会重新加载
+     */
+    private synchronized Snapshot refresh() {
+        String version = readVersion();
+
         //查询缓存
-        String key = "cache:shopType";
-        List<ShopType> cacheTypeList = (List<ShopType>) redisTemplate.opsForValue().get(key);
+        List<ShopType> typeList = (List<ShopType>) redisTemplate.opsForValue().get(CACHE_SHOP_TYPE_KEY);
 
-        //缓存有，直接返回
-        if(cacheTypeList != null && !cacheTypeList.isEmpty()){
-            return cacheTypeList;
+        //没有，从数据库查询，按查询前读取的版本写入缓存
+        if (typeList == null || typeList.isEmpty()) {
+            typeList = list();
+            if (!typeList.isEmpty()) {
+                redisUtils.setIfUnchanged(CACHE_SHOP_TYPE_KEY, typeList, version, CACHE_SHOP_TYPE_TTL, TimeUnit.MINUTES);
+            }
         }
 
-        //没有，从数据库查询
-        List<ShopType> typeList = list();
+        Snapshot loaded = new Snapshot(version, typeList, toJson(typeList));
+        snapshot = loaded;
+        log.debug("店铺类型快照已更新, 版本: {}, 数量: {}", version, typeList.size());
+        return loaded;
+    }
+
+    private String readVersion() {
+        String version = stringRedisTemplate.opsForValue().get(CACHE_VERSION_KEY + CACHE_SHOP_TYPE_KEY);
+        return version == null ? "0" : version;
+    }
 
-        //写入缓存
-        if(typeList != null && !typeList.isEmpty()){
-            redisTemplate.opsForValue().set(key, typeList);
+    private byte[] toJson(List<ShopType> typeList) {
+        try {
+            return objectMapper.writeValueAsBytes(Result.ok(typeList));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("序列化店铺类型失败", e);
         }
+    }
+
+    /**
+     * 店铺类型快照，创建后不再修改
+     */
+    private static class Snapshot {
+        private final String version;
+        private final List<ShopType> types;
+        private final byte[] json;
 
-        //返回数据
-        return typeList;
+        private Snapshot(String version, List<ShopType> types, byte[] json) {
+            this.version = version;
+            this.types = Collections.unmodifiableList(new ArrayList<>(types));
+            this.json = json;
+        }
     }
 }
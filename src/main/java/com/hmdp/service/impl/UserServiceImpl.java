@@ -1,7 +1,5 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
-import cn.hutool.core.lang.UUID;
 import cn.hutool.core.util.RandomUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.LoginFormDTO;
@@ -11,6 +9,8 @@ import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
 import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.SessionManager;
+import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,7 +20,6 @@ import org.springframework.stereotype.Service;
 
 import javax.servlet.http.HttpSession;
 
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
@@ -30,10 +29,11 @@ import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
 public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IUserService {
 
     private static final String LOGIN_CODE = "login:code:";
-    private static final String LOGIN_TOKEN = "login:token:";
 
     @Autowired
     private RedisTemplate redisTemplate;
+    @Autowired
+    private SessionManager sessionManager;
 
     @Override
     public Result sendCode(String phone, HttpSession session) {
@@ -82,23 +82,33 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             user = createUserWithPhone(phone);
         }
 
-        //保存用户到redis中,以随机token(UUID)为key
-        String token = UUID.randomUUID().toString(true);
+        //创建会话
         UserDTO userDTO = new UserDTO();
         BeanUtils.copyProperties(user, userDTO);
-
-        //将对象转为Hash存储
-        Map<String, Object> userMap = BeanUtil.beanToMap(userDTO);
-        String tokenKey = LOGIN_TOKEN + token;
-        redisTemplate.opsForHash().putAll(tokenKey, userMap);
-
-        //设置token有效期
-        redisTemplate.expire(tokenKey, 60, TimeUnit.MINUTES);
+        String token = sessionManager.create(userDTO);
 
         //返回token
         return Result.ok(token);
     }
 
+    @Override
+    public Result logout(String token) {
+        if(token == null || token.isEmpty()){
+            return Result.ok();
+        }
+
+        //删除会话
+        sessionManager.invalidate(token);
+        return Result.ok();
+    }
+
+    @Override
+    public Result logoutAll() {
+        //删除当前用户的全部会话
+        sessionManager.invalidateAll(UserHolder.getUser().getId());
+        return Result.ok();
+    }
+
     private User createUserWithPhone(String phone) {
         User user = new User();
         user.setPhone(phone);
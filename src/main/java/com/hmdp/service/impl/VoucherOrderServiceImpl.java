@@ -1,6 +1,8 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.util.RuntimeUtil;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.SeckillVoucher;
@@ -11,7 +13,8 @@ import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IVoucherService;
-import com.hmdp.utils.RedisIdGenerator;
+import com.hmdp.utils.IdGenerator;
+import com.hmdp.utils.SeckillSoldOutRegistry;
 import com.hmdp.utils.UserHolder;
 import io.netty.util.concurrent.SingleThreadEventExecutor;
 import lombok.extern.slf4j.Slf4j;
@@ -20,25 +23,45 @@ import org.redisson.api.RedissonClient;
 import org.springframework.aop.framework.AopContext;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands.XClaimOptions;
 import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SHARD_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_SHARD_QUEUE_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_SHARD_STOCK_KEY;
 
 @Slf4j
 @Service
@@ -47,7 +70,7 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Autowired
     private ISeckillVoucherService seckillVoucherService;
     @Autowired
-    private RedisIdGenerator redisIdGenerator;
+    private IdGenerator idGenerator;
     @Autowired
     private RedissonClient redissonClient;
     @Autowired
@@ -56,56 +79,186 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private StringRedisTemplate stringRedisTemplate;
     @Autowired
     private IVoucherOrderService iVoucherOrderService;
+    @Autowired
+    private SeckillSoldOutRegistry seckillSoldOutRegistry;
 
-    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    private static final DefaultRedisScript<List> SECKILL_SCRIPT;
+    private static final DefaultRedisScript<List> SECKILL_SHARD_SCRIPT;
 
     private volatile boolean running = true;
 
+    private static final String ORDER_QUEUE = "stream.orders";
+    private static final String ORDER_GROUP = "g1";
+    private static final String ORDER_DLQ = "stream.orders.dlq";
+    //每次检查pendingList的最大消息数
+    private static final long RECLAIM_COUNT = 100L;
+
+    //每个节点的消费者数量
+    @Value("${hmdp.seckill.order.consumers:2}")
+    private int consumerCount;
+    //每次从消息队列读取的最大订单数
+    @Value("${hmdp.seckill.order.batch-size:16}")
+    private int batchSize;
+    //检查pendingList的间隔(ms)
+    @Value("${hmdp.seckill.order.reclaim-interval:5000}")
+    private long reclaimInterval;
+    //消息空闲超过该时间(ms)才会被认领
+    @Value("${hmdp.seckill.order.reclaim-idle:30000}")
+    private long reclaimIdle;
+    //最大投递次数，超过后转入死信队列
+    @Value("${hmdp.seckill.order.max-deliveries:3}")
+    private long maxDeliveries;
+    //秒杀时是否加用户锁，默认关闭，一人一单由lua脚本保证
+    @Value("${hmdp.seckill.user-lock:false}")
+    private boolean userLock;
+    //库存分片数，大于1时启用分片库存
+    @Value("${hmdp.seckill.stock-shards:1}")
+    private int stockShards;
+
     static {
         SECKILL_SCRIPT = new DefaultRedisScript<>();
         SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
-        SECKILL_SCRIPT.setResultType(Long.class);
+        SECKILL_SCRIPT.setResultType(List.class);
+        SECKILL_SHARD_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SHARD_SCRIPT.setLocation(new ClassPathResource("seckill_shard.lua"));
+        SECKILL_SHARD_SCRIPT.setResultType(List.class);
     }
 
     //阻塞队列
     //private static final BlockingQueue<VoucherOrder> orderQueue = new ArrayBlockingQueue<>(1024 * 1024);
-    private static final ExecutorService HANDLE_SECKILL_ORDER = Executors.newSingleThreadExecutor();
+    private ExecutorService handleSeckillOrder;
+    private ScheduledExecutorService reclaimPendingOrder;
+    //订单消息队列，分片库存模式下每个分片还有自己的stream
+    private List<String> orderQueues;
 
 
     /**
      * 优惠卷秒杀--异步秒杀--redis + mq
+     * 一人一单由lua脚本原子判断，默认不加锁，一次脚本调用完成下单
      */
     @Override
     public Result seckillVoucher(Long voucherId) {
+        //本地已售罄，直接返回，不访问redis
+        if (seckillSoldOutRegistry.isSoldOut(voucherId)) {
+            return Result.fail("库存不足");
+        }
         Long userId = UserHolder.getUser().getId();
-        long orderId = redisIdGenerator.nextId("order");
+        if (!userLock) {
+            return executeSeckill(voucherId, userId);
+        }
+
+        //加锁模式，保留用于对比
         RLock lock = redissonClient.getLock("lock:order:" + userId);
         boolean isLock = lock.tryLock();
         if (!isLock) {
             return Result.fail("不能重复下单");
         }
         try {
-            //执行lua脚本
-            Long res = stringRedisTemplate.execute(SECKILL_SCRIPT,
-                    Collections.emptyList(),
-                    String.valueOf(voucherId),
-                    String.valueOf(userId),
-                    String.valueOf(orderId));
-            int result = res.intValue();
-
-            //判断是否可以购买
-            if (result != 0) {
-                //不能，返回异常
-                return Result.fail(result == 1 ? "库存不足" : "不能重复下单");
-            }
-
-            //返回订单id
-            return Result.ok(orderId);
+            return executeSeckill(voucherId, userId);
         } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * 执行lua脚本，判断库存和一人一单并发送订单消息
+     * 订单id由redis自增时在脚本校验通过后分配，失败的请求不消耗id；本地生成的id不访问redis，直接传给脚本
+     */
+    private Result executeSeckill(Long voucherId, Long userId) {
+        if (stockShards > 1) {
+            //分片模式下自增计数器不在分片的slot内，调用脚本前生成订单id
+            long orderId = idGenerator.nextId("order");
+            Result failure = toFailure(voucherId, executeShardSeckill(voucherId, userId, orderId));
+            return failure != null ? failure : Result.ok(orderId);
+        }
+
+        IdGenerator.ScriptCounter counter = idGenerator.scriptCounter("order");
+        long localId = counter == null ? idGenerator.nextId("order") : 0;
+        //执行lua脚本
+        List<?> res = stringRedisTemplate.execute(SECKILL_SCRIPT,
+                Collections.emptyList(),
+                String.valueOf(voucherId),
+                String.valueOf(userId),
+                counter == null ? String.valueOf(localId) : "",
+                String.valueOf(System.currentTimeMillis()),
+                counter == null ? "" : counter.getKey(),
+                counter == null ? "" : String.valueOf(counter.getBase()));
+        Result failure = toFailure(voucherId, res);
+        if (failure != null) {
+            return failure;
+        }
+
+        //返回订单id
+        return Result.ok(counter == null ? localId : counter.toId(((Number) res.get(1)).longValue()));
+    }
+
+    /**
+     * 判断是否可以购买，可以购买时返回null
+     */
+    private Result toFailure(Long voucherId, List<?> res) {
+        switch (((Number) res.get(0)).intValue()) {
+            case 0:
+                return null;
+            case 1:
+                //库存不足，记录本地售罄标记
+                seckillSoldOutRegistry.markSoldOut(voucherId);
+                return Result.fail("库存不足");
+            case 3:
+                return Result.fail("秒杀尚未开始");
+            case 4:
+                return Result.fail("秒杀已经结束");
+            default:
+                return Result.fail("不能重复下单");
+        }
+    }
+
+    /**
+     * 分片库存秒杀：用户按id路由到所在分片，分片库存不足时向兄弟分片借库存
+     * 每次脚本调用只访问一个分片的key(同一个cluster slot)，扣减库存的同时向该分片的stream发送订单消息
+     * 本节点记录已售罄的分片，借库存时跳过，全部分片售罄后直接在本地拒绝
+     */
+    private List<?> executeShardSeckill(Long voucherId, Long userId, long orderId) {
+        int home = (int) (userId % stockShards);
+        String now = String.valueOf(System.currentTimeMillis());
+        List<?> res = executeShardScript(voucherId, home, "home", userId, now, orderId);
+        if (((Number) res.get(0)).intValue() != 5) {
+            return res;
+        }
+
+        //所在分片库存不足，向未售罄的兄弟分片借库存
+        seckillSoldOutRegistry.markShardEmpty(voucherId, home, stockShards);
+        for (int i = 1; i < stockShards; i++) {
+            int shard = (home + i) % stockShards;
+            if (seckillSoldOutRegistry.isShardEmpty(voucherId, shard)) {
+                continue;
+            }
+            res = executeShardScript(voucherId, shard, "borrow", userId, now, orderId);
+            if (((Number) res.get(0)).intValue() == 0) {
+                return res;
+            }
+            seckillSoldOutRegistry.markShardEmpty(voucherId, shard, stockShards);
+        }
+        //全部分片库存不足，释放用户占位
+        executeShardScript(voucherId, home, "release", userId, now, orderId);
+        return Collections.singletonList(1L);
+    }
+
+    private List<?> executeShardScript(Long voucherId, int shard, String action, Long userId, String now, long orderId) {
+        String tag = shardTag(shard);
+        return stringRedisTemplate.execute(SECKILL_SHARD_SCRIPT,
+                Arrays.asList(SECKILL_SHARD_STOCK_KEY + voucherId + ":" + tag,
+                        SECKILL_SHARD_ORDER_KEY + voucherId + ":" + tag,
+                        SECKILL_SHARD_QUEUE_KEY + tag),
+                action, String.valueOf(userId), now, String.valueOf(voucherId), String.valueOf(orderId));
+    }
+
+    /**
+     * 分片的hash tag，只包含分片序号，同一分片的所有key在同一个cluster slot
+     */
+    private static String shardTag(int shard) {
+        return "{shard:" + shard + "}";
+    }
+
     @Transactional(rollbackFor = Exception.class)
     @Override
     public void createVoucherOrder(VoucherOrder voucherOrder) {
@@ -127,6 +280,66 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         save(voucherOrder);
     }
 
+    /**
+     * 批量创建订单：按优惠卷分组扣减库存，一条多值insert写入订单
+     * 消息可能在提交后、ACK前重复投递，已存在的订单直接跳过，不重复扣减库存
+     */
+    @Transactional(rollbackFor = Exception.class)
+    @Override
+    public void createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        //过滤已落库的订单，并发重复处理时由主键冲突回滚整个事务，重试时再过滤
+        List<Long> orderIds = voucherOrders.stream().map(VoucherOrder::getId).collect(Collectors.toList());
+        Set<Long> existing = listByIds(orderIds).stream().map(VoucherOrder::getId).collect(Collectors.toSet());
+        if (!existing.isEmpty()) {
+            log.warn("订单已存在, 跳过: {}", existing);
+        }
+
+        //按优惠卷分组
+        Map<Long, List<VoucherOrder>> ordersByVoucher = voucherOrders.stream()
+                .filter(order -> !existing.contains(order.getId()))
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, LinkedHashMap::new, Collectors.toList()));
+
+        List<VoucherOrder> toSave = new ArrayList<>(voucherOrders.size());
+        for (Map.Entry<Long, List<VoucherOrder>> entry : ordersByVoucher.entrySet()) {
+            int count = entry.getValue().size();
+            //每个优惠卷扣减一次库存
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock = stock - " + count)
+                    .eq("voucher_id", entry.getKey())
+                    //乐观锁解决超卖问题
+                    .ge("stock", count)
+                    .update();
+            if (success) {
+                toSave.addAll(entry.getValue());
+                continue;
+            }
+            //库存不足一整批，逐条扣减，剩余库存内的订单仍然落库
+            for (VoucherOrder voucherOrder : entry.getValue()) {
+                boolean one = seckillVoucherService.update()
+                        .setSql("stock = stock - 1")
+                        .eq("voucher_id", entry.getKey())
+                        .gt("stock", 0)
+                        .update();
+                if (!one) {
+                    log.error("库存不足, voucherId: {}, orderId: {}", entry.getKey(), voucherOrder.getId());
+                    continue;
+                }
+                toSave.add(voucherOrder);
+            }
+        }
+
+        if (toSave.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (VoucherOrder voucherOrder : toSave) {
+            voucherOrder.setCreateTime(now);
+            voucherOrder.setUpdateTime(now);
+            voucherOrder.setStatus(1);
+        }
+        getBaseMapper().insertBatch(toSave);
+    }
+
 
     /**
      * 阻塞队列异步完成订单操作
@@ -146,11 +359,45 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     }*/
 
     /**
-     * spring初始化后开始异步下单操作
+     * spring初始化后开始异步下单操作，每个节点对每个订单stream启动多个消费者
      */
     @PostConstruct
     private void init() {
-        HANDLE_SECKILL_ORDER.submit(new handleSecKillOrder());
+        orderQueues = new ArrayList<>();
+        orderQueues.add(ORDER_QUEUE);
+        if (stockShards > 1) {
+            for (int i = 0; i < stockShards; i++) {
+                String queue = SECKILL_SHARD_QUEUE_KEY + shardTag(i);
+                createGroupIfAbsent(queue);
+                orderQueues.add(queue);
+            }
+        }
+
+        handleSeckillOrder = Executors.newFixedThreadPool(consumerCount * orderQueues.size());
+        //消费者名称：主机名-进程号-序号，保证同一消费者组内唯一
+        String consumerPrefix = NetUtil.getLocalHostName() + "-" + RuntimeUtil.getPid();
+        for (String queue : orderQueues) {
+            for (int i = 0; i < consumerCount; i++) {
+                handleSeckillOrder.submit(new handleSecKillOrder(queue, consumerPrefix + "-c" + i));
+            }
+        }
+
+        //定时认领组内所有消费者超时未ACK的消息
+        reclaimPendingOrder = Executors.newSingleThreadScheduledExecutor();
+        reclaimPendingOrder.scheduleWithFixedDelay(new reclaimPendingList(consumerPrefix + "-reclaimer"),
+                reclaimInterval, reclaimInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 分片stream随第一条订单消息创建，启动时创建stream和消费者组，已存在时忽略
+     */
+    private void createGroupIfAbsent(String queue) {
+        try {
+            redisTemplate.execute((RedisCallback<String>) connection -> connection.xGroupCreate(
+                    queue.getBytes(StandardCharsets.UTF_8), ORDER_GROUP, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            log.debug("消费者组已存在: {}", queue);
+        }
     }
 
     /**
@@ -159,81 +406,171 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @PreDestroy
     public void stop() {
         running = false;
+        handleSeckillOrder.shutdown();
+        reclaimPendingOrder.shutdown();
         log.info("停止异步下单线程");
     }
 
+    /**
+     * 解析一批订单消息，同一事务内落库，再一次性ACK
+     */
+    private void handleRecords(String queue, List<MapRecord<String, Object, Object>> list) {
+        List<VoucherOrder> voucherOrders = new ArrayList<>(list.size());
+        RecordId[] recordIds = new RecordId[list.size()];
+        for (int i = 0; i < list.size(); i++) {
+            MapRecord<String, Object, Object> record = list.get(i);
+            voucherOrders.add(BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true));
+            recordIds[i] = record.getId();
+        }
+
+        iVoucherOrderService.createVoucherOrders(voucherOrders);
+
+        //ACK确认
+        redisTemplate.opsForStream().acknowledge(queue, ORDER_GROUP, recordIds);
+    }
 
     /**
-     * 消息队列异步下单
+     * pendingList恢复：认领组内任意消费者空闲超时的消息重试，超过最大投递次数转入死信队列
      */
-    private class handleSecKillOrder implements Runnable {
-        String queueName = "stream.orders";
+    private class reclaimPendingList implements Runnable {
+        private final String consumerName;
+
+        reclaimPendingList(String consumerName) {
+            this.consumerName = consumerName;
+        }
 
         @Override
         public void run() {
-            while (running) {
-                try {
-                    //获取消息队列的订单
-                    List<MapRecord<String, Object, Object>> list = redisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofMillis(200)),
-                            StreamOffset.create(queueName, ReadOffset.lastConsumed())
-                    );
+            for (String queue : orderQueues) {
+                if (!running) {
+                    return;
+                }
+                reclaim(queue);
+            }
+        }
 
-                    //失败没有消息，继续循环
-                    if (list == null || list.isEmpty()) {
-                        continue;
+        private void reclaim(String queue) {
+            try {
+                //查询组内pendingList，记录每条消息的投递次数
+                PendingMessages pendingMessages = redisTemplate.opsForStream()
+                        .pending(queue, ORDER_GROUP, Range.unbounded(), RECLAIM_COUNT);
+                Duration minIdle = Duration.ofMillis(reclaimIdle);
+                Map<String, Long> deliveryCounts = new HashMap<>();
+                for (PendingMessage pendingMessage : pendingMessages) {
+                    if (pendingMessage.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0) {
+                        deliveryCounts.put(pendingMessage.getIdAsString(), pendingMessage.getTotalDeliveryCount());
                     }
+                }
+                if (deliveryCounts.isEmpty()) {
+                    return;
+                }
 
-                    //解析订单消息
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> values = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-
-                    //成功，下单
-                    iVoucherOrderService.createVoucherOrder(voucherOrder);
+                //认领空闲超时的消息，认领后投递次数+1
+                List<MapRecord<String, Object, Object>> records = claim(queue, minIdle, deliveryCounts.keySet());
 
-                    //ACK确认
-                    redisTemplate.opsForStream().acknowledge(queueName, "g1", record.getId());
+                List<MapRecord<String, Object, Object>> retries = new ArrayList<>(records.size());
+                for (MapRecord<String, Object, Object> record : records) {
+                    if (deliveryCounts.get(record.getId().getValue()) >= maxDeliveries) {
+                        //投递次数耗尽，转入死信队列
+                        deadLetter(queue, record, "超过最大投递次数");
+                    } else {
+                        retries.add(record);
+                    }
+                }
+                if (retries.isEmpty()) {
+                    return;
+                }
 
+                //先整批重试，失败后逐条重试以隔离异常消息
+                try {
+                    handleRecords(queue, retries);
                 } catch (Exception e) {
-                    if (running) {
-                        log.error("处理订单异常", e);
-                        handlePendingList();
+                    for (MapRecord<String, Object, Object> record : retries) {
+                        retry(queue, record, deliveryCounts.get(record.getId().getValue()) + 1);
                     }
                 }
+            } catch (Exception e) {
+                log.error("处理pendingList异常: {}", queue, e);
+            }
+        }
+
+        private List<MapRecord<String, Object, Object>> claim(String queue, Duration minIdle, Collection<String> ids) {
+            List<ByteRecord> byteRecords = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                    connection.xClaim(queue.getBytes(StandardCharsets.UTF_8), ORDER_GROUP, consumerName,
+                            XClaimOptions.minIdle(minIdle).ids(ids.toArray(new String[0]))));
+            if (byteRecords == null) {
+                return Collections.emptyList();
             }
+            StringRedisSerializer stringSerializer = StringRedisSerializer.UTF_8;
+            RedisSerializer<?> valueSerializer = redisTemplate.getHashValueSerializer();
+            return byteRecords.stream()
+                    .map(record -> record.<String, Object, Object>deserialize(stringSerializer, stringSerializer, valueSerializer))
+                    .collect(Collectors.toList());
+        }
+
+        private void retry(String queue, MapRecord<String, Object, Object> record, long deliveries) {
+            try {
+                handleRecords(queue, Collections.singletonList(record));
+            } catch (Exception e) {
+                if (deliveries >= maxDeliveries) {
+                    deadLetter(queue, record, e.toString());
+                } else {
+                    log.warn("订单消息重试失败, id: {}, 投递次数: {}", record.getId(), deliveries, e);
+                }
+            }
+        }
+
+        /**
+         * 转入死信队列并ACK原消息
+         */
+        private void deadLetter(String queue, MapRecord<String, Object, Object> record, String reason) {
+            Map<String, String> values = new HashMap<>();
+            record.getValue().forEach((k, v) -> values.put(String.valueOf(k), String.valueOf(v)));
+            values.put("sourceId", record.getId().getValue());
+            values.put("reason", reason);
+            stringRedisTemplate.opsForStream().add(ORDER_DLQ, values);
+            redisTemplate.opsForStream().acknowledge(queue, ORDER_GROUP, record.getId());
+            log.error("订单消息转入死信队列, id: {}, 原因: {}", record.getId(), reason);
+        }
+    }
+
+
+    /**
+     * 消息队列异步下单，每次批量读取、批量落库、批量ACK
+     */
+    private class handleSecKillOrder implements Runnable {
+        private final String queue;
+        private final Consumer consumer;
+
+        handleSecKillOrder(String queue, String consumerName) {
+            this.queue = queue;
+            this.consumer = Consumer.from(ORDER_GROUP, consumerName);
         }
 
-        private void handlePendingList() {
-            while (true) {
+        @Override
+        public void run() {
+            while (running) {
                 try {
-                    //获取消息队列的订单
+                    //批量获取消息队列的订单
                     List<MapRecord<String, Object, Object>> list = redisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1),
-                            //读取pendingList
-                            StreamOffset.create(queueName, ReadOffset.from("0"))
+                            consumer,
+                            StreamReadOptions.empty().count(batchSize).block(Duration.ofMillis(200)),
+                            StreamOffset.create(queue, ReadOffset.lastConsumed())
                     );
 
-                    //失败没有消息，pendinglist没有异常消息，结束循环
+                    //失败没有消息，继续循环
                     if (list == null || list.isEmpty()) {
-                        break;
+                        continue;
                     }
 
-                    //解析订单消息
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> values = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-
-                    //成功，下单
-                    iVoucherOrderService.createVoucherOrder(voucherOrder);
-
-                    //ACK确认
-                    redisTemplate.opsForStream().acknowledge(queueName, "g1", record.getId());
+                    //成功，批量下单并ACK
+                    handleRecords(queue, list);
 
                 } catch (Exception e) {
-                    log.error("处理订单异常", e);
+                    //未ACK的消息留在pendingList，由reclaimPendingList认领重试
+                    if (running) {
+                        log.error("处理订单异常", e);
+                    }
                 }
             }
         }
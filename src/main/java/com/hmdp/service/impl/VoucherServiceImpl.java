@@ -7,14 +7,23 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.SeckillSoldOutRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SHARD_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_WINDOW_KEY;
 
 @Service
 public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> implements IVoucherService {
@@ -25,6 +34,12 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     private RedisTemplate<String, Object> redisTemplate;
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private SeckillSoldOutRegistry seckillSoldOutRegistry;
+
+    //库存分片数，大于1时启用分片库存
+    @Value("${hmdp.seckill.stock-shards:1}")
+    private int stockShards;
 
     @Override
     public Result queryVoucherOfShop(Long shopId) {
@@ -47,6 +62,39 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
         //保存优惠卷信息到redis
-        stringRedisTemplate.opsForValue().set("seckill:stock:" + voucher.getId(), String.valueOf(voucher.getStock()));
+        String begin = String.valueOf(toEpochMilli(voucher.getBeginTime()));
+        String end = String.valueOf(toEpochMilli(voucher.getEndTime()));
+        if (stockShards > 1) {
+            saveShardStock(voucher.getId(), voucher.getStock(), begin, end);
+        } else {
+            stringRedisTemplate.opsForValue().set("seckill:stock:" + voucher.getId(), String.valueOf(voucher.getStock()));
+            //保存秒杀时间到redis，由lua脚本判断是否在秒杀时间内
+            Map<String, String> window = new HashMap<>();
+            window.put("begin", begin);
+            window.put("end", end);
+            stringRedisTemplate.opsForHash().putAll(SECKILL_WINDOW_KEY + voucher.getId(), window);
+        }
+        //库存补充，通知所有节点清除售罄标记
+        seckillSoldOutRegistry.publishReplenished(voucher.getId());
+    }
+
+    /**
+     * 库存平均拆分到各分片，每个分片hash保存库存和秒杀时间
+     */
+    private void saveShardStock(Long voucherId, int stock, String begin, String end) {
+        for (int i = 0; i < stockShards; i++) {
+            //余数分配给前面的分片
+            int shardStock = stock / stockShards + (i < stock % stockShards ? 1 : 0);
+            Map<String, String> shard = new HashMap<>();
+            shard.put("stock", String.valueOf(shardStock));
+            shard.put("begin", begin);
+            shard.put("end", end);
+            //hash tag只包含分片序号，同一分片的库存、下单用户和订单stream在同一个slot
+            stringRedisTemplate.opsForHash().putAll(SECKILL_SHARD_STOCK_KEY + voucherId + ":{shard:" + i + "}", shard);
+        }
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 }
@@ -0,0 +1,101 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.CacheOutbox;
+import com.hmdp.mapper.CacheOutboxMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存失效发件箱轮询
+ * 定时读取已提交的发件箱记录，批量删除redis缓存并通知所有节点清除本地缓存，处理完成后删除记录
+ * 多个节点同时处理同一批记录时只会重复删除缓存，不影响正确性
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "hmdp.cache.outbox.enabled", havingValue = "true", matchIfMissing = true)
+public class CacheOutboxPoller {
+
+    @Autowired
+    private CacheOutboxMapper cacheOutboxMapper;
+    @Autowired
+    private RedisUtils redisUtils;
+
+    //轮询间隔(ms)
+    @Value("${hmdp.cache.outbox.poll-interval:500}")
+    private long pollInterval;
+    //每批处理的记录数
+    @Value("${hmdp.cache.outbox.batch-size:500}")
+    private int batchSize;
+
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "cache-outbox-poller"));
+
+    @PostConstruct
+    private void init() {
+        poller.scheduleWithFixedDelay(() -> {
+            try {
+                //一批处理满时继续处理，直到发件箱为空
+                while (poll() >= batchSize) {
+                    log.debug("缓存失效发件箱积压, 继续处理");
+                }
+            } catch (Exception e) {
+                log.error("处理缓存失效发件箱异常", e);
+            }
+        }, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        poller.shutdown();
+    }
+
+    /**
+     * 处理一批发件箱记录
+     * @return 本批处理的记录数
+     */
+    public int poll() {
+        //按id顺序读取，已处理的记录按id删除，后提交的较小id会在下一批读到
+        List<CacheOutbox> rows = cacheOutboxMapper.selectList(new QueryWrapper<CacheOutbox>()
+                .orderByAsc("id")
+                .last("limit " + batchSize));
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        Set<String> keys = new LinkedHashSet<>();
+        Set<String> prefixes = new LinkedHashSet<>();
+        List<Long> ids = new ArrayList<>(rows.size());
+        for (CacheOutbox row : rows) {
+            ids.add(row.getId());
+            //以:结尾表示失效该前缀下的全部缓存
+            if (row.getCacheKey().endsWith(":")) {
+                prefixes.add(row.getCacheKey());
+            } else {
+                keys.add(row.getCacheKey());
+            }
+        }
+        keys.removeIf(key -> prefixes.stream().anyMatch(key::startsWith));
+
+        redisUtils.deleteBatch(keys);
+        for (String prefix : prefixes) {
+            log.info("按前缀失效缓存: {}, 数量: {}", prefix, redisUtils.deleteByPrefix(prefix));
+        }
+        cacheOutboxMapper.deleteBatchIds(ids);
+        log.debug("处理缓存失效发件箱: {}条, 失效key: {}个, 前缀: {}个", rows.size(), keys.size(), prefixes.size());
+        return rows.size();
+    }
+}
@@ -0,0 +1,126 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存重建线程池
+ * 有界队列，同一key同时只有一个重建任务，队列满时丢弃任务(调用方继续返回旧数据)
+ */
+@Slf4j
+@Component
+public class CacheRebuildExecutor {
+
+    //重建线程数
+    @Value("${hmdp.cache.rebuild.threads:10}")
+    private int threads;
+    //等待队列容量
+    @Value("${hmdp.cache.rebuild.queue-capacity:1000}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    //正在重建(排队或执行中)的key
+    private final Set<String> rebuildingKeys = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder totalLatencyMillis = new LongAdder();
+
+    @PostConstruct
+    private void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> new Thread(r, "cache-rebuild-" + threadNumber.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 应用关闭时等待已提交的重建任务完成
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.warn("缓存重建任务未完成, 强制关闭, 剩余任务: {}", executor.shutdownNow().size());
+        }
+    }
+
+    /**
+     * 该key是否正在重建
+     */
+    public boolean isRebuilding(String key) {
+        return rebuildingKeys.contains(key);
+    }
+
+    /**
+     * 提交重建任务
+     * @return false: 该key已在重建或队列已满，任务未提交
+     */
+    public boolean submit(String key, Runnable task) {
+        if (!rebuildingKeys.add(key)) {
+            deduplicated.increment();
+            return false;
+        }
+        try {
+            executor.execute(() -> run(key, task));
+            submitted.increment();
+            return true;
+        } catch (RejectedExecutionException e) {
+            rebuildingKeys.remove(key);
+            dropped.increment();
+            log.warn("缓存重建队列已满, 丢弃重建任务: {}", key);
+            return false;
+        }
+    }
+
+    private void run(String key, Runnable task) {
+        long begin = System.currentTimeMillis();
+        try {
+            task.run();
+            completed.increment();
+        } catch (Exception e) {
+            failed.increment();
+            log.error("缓存重建失败: {}", key, e);
+        } finally {
+            totalLatencyMillis.add(System.currentTimeMillis() - begin);
+            rebuildingKeys.remove(key);
+        }
+    }
+
+    /**
+     * 线程池指标
+     */
+    public Map<String, Object> metrics() {
+        long finished = completed.sum() + failed.sum();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("queueDepth", executor.getQueue().size());
+        metrics.put("activeThreads", executor.getActiveCount());
+        metrics.put("rebuildingKeys", rebuildingKeys.size());
+        metrics.put("submitted", submitted.sum());
+        metrics.put("completed", completed.sum());
+        metrics.put("failed", failed.sum());
+        metrics.put("deduplicated", deduplicated.sum());
+        metrics.put("dropped", dropped.sum());
+        metrics.put("avgLatencyMillis", finished == 0 ? 0 : totalLatencyMillis.sum() / finished);
+        return metrics;
+    }
+}
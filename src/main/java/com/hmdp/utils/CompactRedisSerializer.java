@@ -0,0 +1,246 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Shop;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * 紧凑二进制序列化，热点对象(Shop、RedisData、UserDTO)手写编码，其他对象仍使用json
+ * 格式：[魔数][版本][类型][数据]，没有魔数的数据按旧的json格式读取，保证滚动升级时新旧数据都能读取
+ * compactWrite为false时只读取二进制数据，写入仍使用json，全部节点升级后再开启
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    //json不会以该字节开头
+    private static final byte MAGIC = (byte) 0xC1;
+    private static final byte VERSION = 1;
+
+    private static final byte TYPE_JSON = 0;
+    private static final byte TYPE_SHOP = 1;
+    private static final byte TYPE_REDIS_DATA = 2;
+    private static final byte TYPE_USER = 3;
+
+    private final RedisSerializer<Object> jsonSerializer;
+    private final boolean compactWrite;
+
+    public CompactRedisSerializer(RedisSerializer<Object> jsonSerializer, boolean compactWrite) {
+        this.jsonSerializer = jsonSerializer;
+        this.compactWrite = compactWrite;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        //标量(如zset中的用户id)保持json格式，保证成员字节不变
+        if (value == null || !compactWrite || !isCompactType(value)) {
+            return jsonSerializer.serialize(value);
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(MAGIC);
+            out.writeByte(VERSION);
+            writeObject(out, value);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("序列化失败: " + value.getClass().getName(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        //旧数据，按json读取
+        if (bytes[0] != MAGIC) {
+            return jsonSerializer.deserialize(bytes);
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            in.readByte();
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new SerializationException("不支持的序列化版本: " + version);
+            }
+            return readObject(in);
+        } catch (IOException e) {
+            throw new SerializationException("反序列化失败", e);
+        }
+    }
+
+    private static boolean isCompactType(Object value) {
+        return value instanceof Shop || value instanceof RedisData || value instanceof UserDTO;
+    }
+
+    private void writeObject(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof Shop) {
+            out.writeByte(TYPE_SHOP);
+            writeShop(out, (Shop) value);
+        } else if (value instanceof RedisData) {
+            out.writeByte(TYPE_REDIS_DATA);
+            RedisData redisData = (RedisData) value;
+            writeTime(out, redisData.getExpireTime());
+            writeLong(out, redisData.getRebuildCost());
+            writeObject(out, redisData.getData());
+        } else if (value instanceof UserDTO) {
+            out.writeByte(TYPE_USER);
+            UserDTO user = (UserDTO) value;
+            writeLong(out, user.getId());
+            writeString(out, user.getNickName());
+            writeString(out, user.getIcon());
+        } else {
+            out.writeByte(TYPE_JSON);
+            writeBytes(out, jsonSerializer.serialize(value));
+        }
+    }
+
+    private Object readObject(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_SHOP:
+                return readShop(in);
+            case TYPE_REDIS_DATA:
+                RedisData redisData = new RedisData();
+                redisData.setExpireTime(readTime(in));
+                redisData.setRebuildCost(readLong(in));
+                redisData.setData(readObject(in));
+                return redisData;
+            case TYPE_USER:
+                UserDTO user = new UserDTO();
+                user.setId(readLong(in));
+                user.setNickName(readString(in));
+                user.setIcon(readString(in));
+                return user;
+            case TYPE_JSON:
+                return jsonSerializer.deserialize(readBytes(in));
+            default:
+                throw new SerializationException("未知的序列化类型: " + type);
+        }
+    }
+
+    private static void writeShop(DataOutputStream out, Shop shop) throws IOException {
+        writeLong(out, shop.getId());
+        writeString(out, shop.getName());
+        writeLong(out, shop.getTypeId());
+        writeString(out, shop.getImages());
+        writeString(out, shop.getArea());
+        writeString(out, shop.getAddress());
+        writeDouble(out, shop.getX());
+        writeDouble(out, shop.getY());
+        writeLong(out, shop.getAvgPrice());
+        writeInt(out, shop.getSold());
+        writeInt(out, shop.getComments());
+        writeInt(out, shop.getScore());
+        writeString(out, shop.getOpenHours());
+        writeTime(out, shop.getCreateTime());
+        writeTime(out, shop.getUpdateTime());
+        writeDouble(out, shop.getDistance());
+    }
+
+    private static Shop readShop(DataInputStream in) throws IOException {
+        Shop shop = new Shop();
+        shop.setId(readLong(in));
+        shop.setName(readString(in));
+        shop.setTypeId(readLong(in));
+        shop.setImages(readString(in));
+        shop.setArea(readString(in));
+        shop.setAddress(readString(in));
+        shop.setX(readDouble(in));
+        shop.setY(readDouble(in));
+        shop.setAvgPrice(readLong(in));
+        shop.setSold(readInt(in));
+        shop.setComments(readInt(in));
+        shop.setScore(readInt(in));
+        shop.setOpenHours(readString(in));
+        shop.setCreateTime(readTime(in));
+        shop.setUpdateTime(readTime(in));
+        shop.setDistance(readDouble(in));
+        return shop;
+    }
+
+    //以下为可空字段编码，先写一个字节标记是否为空
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static void writeInt(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInt(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private static void writeDouble(DataOutputStream out, Double value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static Double readDouble(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readDouble() : null;
+    }
+
+    private static void writeTime(DataOutputStream out, LocalDateTime value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(value.getNano());
+        }
+    }
+
+    private static LocalDateTime readTime(DataInputStream in) throws IOException {
+        return in.readBoolean() ? LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC) : null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
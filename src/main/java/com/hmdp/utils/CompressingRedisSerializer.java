@@ -0,0 +1,165 @@
+package com.hmdp.utils;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 压缩序列化，序列化结果超过阈值时压缩
+ * 格式：[压缩标记][算法][原始长度][压缩数据]，没有压缩标记的数据直接交给内部序列化器读取
+ * enabled为false时只解压不压缩，全部节点升级后再开启
+ */
+public class CompressingRedisSerializer implements RedisSerializer<Object> {
+
+    //json和紧凑格式(0xC1)都不会以该字节开头
+    private static final byte COMPRESSED = (byte) 0xC2;
+    private static final byte ALGORITHM_DEFLATE = 1;
+    private static final int HEADER_LENGTH = 6;
+
+    private final RedisSerializer<Object> delegate;
+    private final boolean enabled;
+    //超过该字节数才压缩
+    private final int threshold;
+
+    //按缓存数据类型统计，逻辑过期数据按其中的data类型统计
+    private final Map<String, Stats> statsByType = new ConcurrentHashMap<>();
+    private final LongAdder decompressed = new LongAdder();
+    private final LongAdder decompressNanos = new LongAdder();
+
+    public CompressingRedisSerializer(RedisSerializer<Object> delegate, boolean enabled, int threshold) {
+        this.delegate = delegate;
+        this.enabled = enabled;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        byte[] bytes = delegate.serialize(value);
+        if (!enabled || bytes == null || bytes.length < threshold) {
+            return bytes;
+        }
+        Stats stats = statsByType.computeIfAbsent(typeOf(value), k -> new Stats());
+        long begin = System.nanoTime();
+        byte[] compressed = deflate(bytes);
+        stats.compressNanos.add(System.nanoTime() - begin);
+        //压缩后没有变小，保存原数据
+        if (compressed.length + HEADER_LENGTH >= bytes.length) {
+            stats.incompressible.increment();
+            return bytes;
+        }
+        stats.compressed.increment();
+        stats.originalBytes.add(bytes.length);
+        stats.compressedBytes.add(compressed.length + HEADER_LENGTH);
+        return ByteBuffer.allocate(compressed.length + HEADER_LENGTH)
+                .put(COMPRESSED)
+                .put(ALGORITHM_DEFLATE)
+                .putInt(bytes.length)
+                .put(compressed)
+                .array();
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0 || bytes[0] != COMPRESSED) {
+            return delegate.deserialize(bytes);
+        }
+        if (bytes.length < HEADER_LENGTH || bytes[1] != ALGORITHM_DEFLATE) {
+            throw new SerializationException("不支持的压缩格式");
+        }
+        long begin = System.nanoTime();
+        byte[] original = inflate(bytes, ByteBuffer.wrap(bytes, 2, 4).getInt());
+        decompressNanos.add(System.nanoTime() - begin);
+        decompressed.increment();
+        return delegate.deserialize(original);
+    }
+
+    /**
+     * 压缩指标，用于调整阈值
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("threshold", threshold);
+        statsByType.forEach((type, stats) -> metrics.put(type, stats.toMap()));
+        long count = decompressed.sum();
+        metrics.put("decompressed", count);
+        metrics.put("avgDecompressMicros", count == 0 ? 0 : decompressNanos.sum() / count / 1000);
+        return metrics;
+    }
+
+    private static String typeOf(Object value) {
+        if (value instanceof RedisData && ((RedisData) value).getData() != null) {
+            return ((RedisData) value).getData().getClass().getSimpleName();
+        }
+        return value.getClass().getSimpleName();
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        //热点路径上以速度优先
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes, int length) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+            byte[] original = new byte[length];
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                int n = inflater.inflate(original, offset, length - offset);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += n;
+            }
+            if (offset != length) {
+                throw new SerializationException("压缩数据已损坏");
+            }
+            return original;
+        } catch (DataFormatException e) {
+            throw new SerializationException("解压失败", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static class Stats {
+        private final LongAdder compressed = new LongAdder();
+        private final LongAdder incompressible = new LongAdder();
+        private final LongAdder originalBytes = new LongAdder();
+        private final LongAdder compressedBytes = new LongAdder();
+        private final LongAdder compressNanos = new LongAdder();
+
+        private Map<String, Object> toMap() {
+            long count = compressed.sum() + incompressible.sum();
+            long original = originalBytes.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("compressed", compressed.sum());
+            map.put("incompressible", incompressible.sum());
+            map.put("ratio", original == 0 ? 1.0 : (double) compressedBytes.sum() / original);
+            map.put("avgCompressMicros", count == 0 ? 0 : compressNanos.sum() / count / 1000);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * GCRA限流，redis保存每个key的理论到达时间，保证集群内的速率
+ * 本地按相同速率维护令牌桶，本节点的令牌已用完时直接拒绝，不访问redis
+ */
+@Component
+public class GcraRateLimiter {
+
+    private static final DefaultRedisScript<List> GCRA_SCRIPT;
+
+    static {
+        GCRA_SCRIPT = new DefaultRedisScript<>();
+        GCRA_SCRIPT.setLocation(new ClassPathResource("rate_limit_gcra.lua"));
+        GCRA_SCRIPT.setResultType(List.class);
+    }
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    //本节点的令牌桶
+    private final Cache<String, TokenBucket> localBuckets = Caffeine.newBuilder()
+            .maximumSize(100000)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
+
+    //按限流名称统计
+    private final Map<String, Stats> statsByName = new ConcurrentHashMap<>();
+
+    /**
+     * 所有规则都通过时计数，否则抛出RateLimitException
+     */
+    public void acquire(List<Rule> rules) {
+        long now = System.currentTimeMillis();
+
+        //本节点令牌不足，直接拒绝
+        List<TokenBucket> buckets = new ArrayList<>(rules.size());
+        for (Rule rule : rules) {
+            TokenBucket bucket = localBuckets.get(rule.key, k -> new TokenBucket(rule, now));
+            long retryAfter = bucket.tryAcquire(now, rule);
+            if (retryAfter > 0) {
+                //归还已取得的令牌
+                buckets.forEach(TokenBucket::release);
+                stats(rule).localThrottled.increment();
+                throw new RateLimitException(rule.key, retryAfter);
+            }
+            buckets.add(bucket);
+        }
+
+        List<String> keys = new ArrayList<>(rules.size());
+        List<String> args = new ArrayList<>(rules.size() * 2 + 1);
+        args.add(String.valueOf(now));
+        for (Rule rule : rules) {
+            keys.add(rule.key);
+            args.add(String.valueOf(rule.intervalMillis));
+            args.add(String.valueOf(rule.burst));
+        }
+        List<?> result;
+        try {
+            result = stringRedisTemplate.execute(GCRA_SCRIPT, keys, args.toArray());
+        } catch (RuntimeException e) {
+            //redis异常时归还本地令牌，否则本地令牌桶会逐渐耗尽
+            buckets.forEach(TokenBucket::release);
+            throw e;
+        }
+        int rejected = ((Number) result.get(0)).intValue();
+        if (rejected > 0) {
+            buckets.forEach(TokenBucket::release);
+            Rule rule = rules.get(rejected - 1);
+            stats(rule).redisThrottled.increment();
+            throw new RateLimitException(rule.key, ((Number) result.get(1)).longValue());
+        }
+        for (Rule rule : rules) {
+            stats(rule).allowed.increment();
+        }
+    }
+
+    /**
+     * 按限流名称统计的通过和拒绝次数
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        statsByName.forEach((name, stats) -> metrics.put(name, stats.toMap()));
+        return metrics;
+    }
+
+    private Stats stats(Rule rule) {
+        return statsByName.computeIfAbsent(rule.name, k -> new Stats());
+    }
+
+    /**
+     * 限流规则
+     */
+    public static class Rule {
+        private final String name;
+        private final String key;
+        //发放一个令牌的间隔(ms)
+        private final double intervalMillis;
+        private final long burst;
+
+        private Rule(String name, String key, double intervalMillis, long burst) {
+            this.name = name;
+            this.key = key;
+            this.intervalMillis = intervalMillis;
+            this.burst = burst;
+        }
+
+        /**
+         * @param name 限流名称，用于统计
+         * @param key redis key
+         * @param rate 每个period的次数
+         * @param burst 突发容量
+         */
+        public static Rule of(String name, String key, long rate, long period, TimeUnit unit, long burst) {
+            return new Rule(name, key, (double) unit.toMillis(period) / rate, Math.max(burst, 1));
+        }
+    }
+
+    /**
+     * 本节点的令牌桶，容量为burst，速率与redis中的规则一致
+     */
+    static class TokenBucket {
+        private double tokens;
+        private long refillTime;
+
+        TokenBucket(Rule rule, long now) {
+            this.tokens = rule.burst;
+            this.refillTime = now;
+        }
+
+        /**
+         * 取得令牌返回0，否则返回需要等待的时间(ms)
+         */
+        synchronized long tryAcquire(long now, Rule rule) {
+            if (now > refillTime) {
+                tokens = Math.min(rule.burst, tokens + (now - refillTime) / rule.intervalMillis);
+                refillTime = now;
+            }
+            if (tokens < 1) {
+                return (long) Math.ceil((1 - tokens) * rule.intervalMillis);
+            }
+            tokens--;
+            return 0;
+        }
+
+        synchronized void release() {
+            tokens++;
+        }
+    }
+
+    private static class Stats {
+        private final LongAdder allowed = new LongAdder();
+        private final LongAdder localThrottled = new LongAdder();
+        private final LongAdder redisThrottled = new LongAdder();
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("allowed", allowed.sum());
+            map.put("localThrottled", localThrottled.sum());
+            map.put("redisThrottled", redisThrottled.sum());
+            return map;
+        }
+    }
+}
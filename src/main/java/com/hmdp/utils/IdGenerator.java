@@ -0,0 +1,39 @@
+package com.hmdp.utils;
+
+public interface IdGenerator {
+
+    long nextId(String prefix);
+
+    /**
+     * 在lua脚本中分配id，脚本校验通过后才INCR，失败的请求不消耗id
+     * 返回null表示id在本地生成、不访问redis，调用方直接使用nextId
+     */
+    default ScriptCounter scriptCounter(String prefix) {
+        return null;
+    }
+
+    /**
+     * 脚本内分配的id：脚本INCR key，id = base | 自增值的低32位
+     */
+    class ScriptCounter {
+        private final String key;
+        private final long base;
+
+        public ScriptCounter(String key, long base) {
+            this.key = key;
+            this.base = base;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getBase() {
+            return base;
+        }
+
+        public long toId(long count) {
+            return base | (count & 0xFFFFFFFFL);
+        }
+    }
+}
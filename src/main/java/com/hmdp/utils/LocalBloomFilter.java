@@ -0,0 +1,84 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 本地布隆过滤器，线程安全，只支持long类型的数据
+ */
+public class LocalBloomFilter {
+
+    private final long bitSize;
+    private final int hashCount;
+    private final AtomicLongArray bits;
+
+    /**
+     * @param expectedInsertions 预计数据量
+     * @param fpp 误判率
+     */
+    public LocalBloomFilter(long expectedInsertions, double fpp) {
+        //m = -n * ln(p) / (ln2)^2, k = m / n * ln2
+        this.bitSize = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+        this.bits = new AtomicLongArray((int) ((bitSize + 63) >>> 6));
+    }
+
+    public void add(long value) {
+        set(offsets(value));
+    }
+
+    /**
+     * 是否可能存在，返回false时一定不存在
+     */
+    public boolean mightContain(long value) {
+        return contains(offsets(value));
+    }
+
+    /**
+     * 双重哈希计算k个位置
+     */
+    long[] offsets(long value) {
+        long hash = MurmurHash.hash64(ByteBuffer.allocate(8).putLong(value).array());
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        long[] offsets = new long[hashCount];
+        for (int i = 0; i < hashCount; i++) {
+            int combined = hash1 + (i + 1) * hash2;
+            if (combined < 0) {
+                combined = ~combined;
+            }
+            offsets[i] = combined % bitSize;
+        }
+        return offsets;
+    }
+
+    void set(long[] offsets) {
+        for (long offset : offsets) {
+            int index = (int) (offset >>> 6);
+            long mask = 1L << offset;
+            long old;
+            do {
+                old = bits.get(index);
+                if ((old & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(index, old, old | mask));
+        }
+    }
+
+    boolean contains(long[] offsets) {
+        for (long offset : offsets) {
+            if ((bits.get((int) (offset >>> 6)) & (1L << offset)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "bitSize=" + bitSize + ", hashCount=" + hashCount;
+    }
+}
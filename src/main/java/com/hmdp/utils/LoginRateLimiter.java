@@ -0,0 +1,58 @@
+package com.hmdp.utils;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.RATE_LIMIT_KEY;
+
+/**
+ * 发送验证码和登录的限流，按手机号、按IP和全局限制
+ */
+@Component
+public class LoginRateLimiter {
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    //发送验证码：每个窗口每个手机号、每个IP和全局的上限
+    @Value("${hmdp.rate-limit.code.phone-limit:3}")
+    private long codePhoneLimit;
+    @Value("${hmdp.rate-limit.code.ip-limit:20}")
+    private long codeIpLimit;
+    @Value("${hmdp.rate-limit.code.global-limit:1000}")
+    private long codeGlobalLimit;
+    //发送验证码的窗口(s)
+    @Value("${hmdp.rate-limit.code.window:60}")
+    private long codeWindow;
+
+    //登录：每个窗口每个手机号、每个IP和全局的上限
+    @Value("${hmdp.rate-limit.login.phone-limit:5}")
+    private long loginPhoneLimit;
+    @Value("${hmdp.rate-limit.login.ip-limit:30}")
+    private long loginIpLimit;
+    @Value("${hmdp.rate-limit.login.global-limit:2000}")
+    private long loginGlobalLimit;
+    //登录的窗口(s)
+    @Value("${hmdp.rate-limit.login.window:60}")
+    private long loginWindow;
+
+    public void checkCode(String phone, String ip) {
+        acquire("code:", phone, ip, codePhoneLimit, codeIpLimit, codeGlobalLimit, codeWindow);
+    }
+
+    public void checkLogin(String phone, String ip) {
+        acquire("login:", phone, ip, loginPhoneLimit, loginIpLimit, loginGlobalLimit, loginWindow);
+    }
+
+    private void acquire(String scene, String phone, String ip,
+                         long phoneLimit, long ipLimit, long globalLimit, long window) {
+        rateLimiter.acquire(Arrays.asList(
+                RateLimiter.Rule.of(RATE_LIMIT_KEY + scene + "phone:" + phone, phoneLimit, window, TimeUnit.SECONDS),
+                RateLimiter.Rule.of(RATE_LIMIT_KEY + scene + "ip:" + ip, ipLimit, window, TimeUnit.SECONDS),
+                RateLimiter.Rule.of(RATE_LIMIT_KEY + scene + "global", globalLimit, window, TimeUnit.SECONDS)));
+    }
+}
@@ -0,0 +1,54 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 接口限流，每个period最多rate次，允许burst次突发
+ * 同一方法上的多个注解在一次redis调用中原子判断，全部通过才计数
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Repeatable(RateLimit.List.class)
+public @interface RateLimit {
+
+    /**
+     * 限流名称，默认为类名.方法名
+     */
+    String name() default "";
+
+    Scope scope() default Scope.GLOBAL;
+
+    long rate();
+
+    long period() default 1;
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+    /**
+     * 突发容量，小于rate时取rate
+     */
+    long burst() default 0;
+
+    enum Scope {
+        //按登录用户，未登录时按IP
+        USER,
+        //按请求路径，如/voucher-order/seckill/{id}按每个优惠券
+        PATH,
+        //全局
+        GLOBAL
+    }
+
+    @Documented
+    @Target(ElementType.METHOD)
+    @Retention(RetentionPolicy.RUNTIME)
+    @interface List {
+        RateLimit[] value();
+    }
+}
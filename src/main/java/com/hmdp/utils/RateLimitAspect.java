@@ -0,0 +1,59 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static com.hmdp.utils.RedisConstants.RATE_LIMIT_KEY;
+
+/**
+ * 处理@RateLimit注解，在进入方法前限流
+ */
+@Aspect
+@Component
+public class RateLimitAspect {
+
+    @Autowired
+    private GcraRateLimiter gcraRateLimiter;
+
+    @Around("@annotation(com.hmdp.utils.RateLimit) || @annotation(com.hmdp.utils.RateLimit.List)")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Set<RateLimit> limits = AnnotatedElementUtils.findMergedRepeatableAnnotations(method, RateLimit.class);
+        List<GcraRateLimiter.Rule> rules = new ArrayList<>(limits.size());
+        for (RateLimit limit : limits) {
+            String name = limit.name().isEmpty()
+                    ? method.getDeclaringClass().getSimpleName() + "." + method.getName()
+                    : limit.name();
+            rules.add(GcraRateLimiter.Rule.of(name, RATE_LIMIT_KEY + "gcra:" + name + ":" + keyOf(limit.scope()),
+                    limit.rate(), limit.period(), limit.unit(), Math.max(limit.burst(), limit.rate())));
+        }
+        gcraRateLimiter.acquire(rules);
+        return joinPoint.proceed();
+    }
+
+    private static String keyOf(RateLimit.Scope scope) {
+        if (scope == RateLimit.Scope.GLOBAL) {
+            return "global";
+        }
+        HttpServletRequest request = ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes()).getRequest();
+        if (scope == RateLimit.Scope.PATH) {
+            return "path:" + request.getRequestURI();
+        }
+        UserDTO user = UserHolder.getUser();
+        return user != null ? "user:" + user.getId() : "ip:" + request.getRemoteAddr();
+    }
+}
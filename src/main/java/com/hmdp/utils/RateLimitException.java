@@ -0,0 +1,21 @@
+package com.hmdp.utils;
+
+/**
+ * 请求超过限流规则
+ */
+public class RateLimitException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    //建议的重试等待时间(ms)
+    private final long retryAfterMillis;
+
+    public RateLimitException(String rule, long retryAfterMillis) {
+        super("请求超过限流规则: " + rule);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
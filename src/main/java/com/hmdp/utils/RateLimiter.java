@@ -0,0 +1,159 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 滑动窗口限流，多个规则(如按手机号、按IP、全局)在一次lua脚本中原子判断
+ * 本地按相同规则统计本节点通过的请求，本节点已超限时直接拒绝，不访问redis
+ */
+@Component
+public class RateLimiter {
+
+    private static final DefaultRedisScript<List> RATE_LIMIT_SCRIPT;
+
+    static {
+        RATE_LIMIT_SCRIPT = new DefaultRedisScript<>();
+        RATE_LIMIT_SCRIPT.setLocation(new ClassPathResource("rate_limit.lua"));
+        RATE_LIMIT_SCRIPT.setResultType(List.class);
+    }
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    //本节点的窗口计数
+    private final Cache<String, LocalWindow> localWindows = Caffeine.newBuilder()
+            .maximumSize(100000)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder localRejected = new LongAdder();
+    private final LongAdder redisRejected = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    /**
+     * 所有规则都通过时计数，否则抛出RateLimitException
+     */
+    public void acquire(List<Rule> rules) {
+        long begin = System.nanoTime();
+        try {
+            long now = System.currentTimeMillis();
+
+            //本节点已超限，直接拒绝
+            List<LocalWindow> windows = new ArrayList<>(rules.size());
+            for (Rule rule : rules) {
+                LocalWindow window = localWindows.get(rule.key, k -> new LocalWindow());
+                long retryAfter = window.retryAfter(now, rule);
+                if (retryAfter > 0) {
+                    localRejected.increment();
+                    throw new RateLimitException(rule.key, retryAfter);
+                }
+                windows.add(window);
+            }
+
+            //redis判断集群内是否超限
+            List<String> keys = new ArrayList<>(rules.size());
+            List<String> args = new ArrayList<>(rules.size() * 2 + 1);
+            args.add(String.valueOf(now));
+            for (Rule rule : rules) {
+                keys.add(rule.key);
+                args.add(String.valueOf(rule.limit));
+                args.add(String.valueOf(rule.windowMillis));
+            }
+            List<?> result = stringRedisTemplate.execute(RATE_LIMIT_SCRIPT, keys, args.toArray());
+            int rejected = ((Number) result.get(0)).intValue();
+            if (rejected > 0) {
+                redisRejected.increment();
+                throw new RateLimitException(rules.get(rejected - 1).key, ((Number) result.get(1)).longValue());
+            }
+
+            for (int i = 0; i < rules.size(); i++) {
+                windows.get(i).increment(now, rules.get(i));
+            }
+            allowed.increment();
+        } finally {
+            totalNanos.add(System.nanoTime() - begin);
+        }
+    }
+
+    /**
+     * 限流指标，avgOverheadMicros为限流器本身的平均耗时
+     */
+    public Map<String, Object> metrics() {
+        long total = allowed.sum() + localRejected.sum() + redisRejected.sum();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("allowed", allowed.sum());
+        metrics.put("localRejected", localRejected.sum());
+        metrics.put("redisRejected", redisRejected.sum());
+        metrics.put("avgOverheadMicros", total == 0 ? 0 : totalNanos.sum() / total / 1000);
+        return metrics;
+    }
+
+    /**
+     * 限流规则
+     */
+    public static class Rule {
+        private final String key;
+        private final long limit;
+        private final long windowMillis;
+
+        private Rule(String key, long limit, long windowMillis) {
+            this.key = key;
+            this.limit = limit;
+            this.windowMillis = windowMillis;
+        }
+
+        /**
+         * @param key redis key前缀
+         * @param limit 每个窗口的上限
+         * @param window 窗口大小
+         */
+        public static Rule of(String key, long limit, long window, TimeUnit unit) {
+            return new Rule(key, limit, unit.toMillis(window));
+        }
+    }
+
+    /**
+     * 本节点的滑动窗口计数，算法与lua脚本一致
+     */
+    static class LocalWindow {
+        private long index;
+        private long current;
+        private long previous;
+
+        synchronized long retryAfter(long now, Rule rule) {
+            roll(now, rule);
+            long elapsed = now % rule.windowMillis;
+            double count = (double) previous * (rule.windowMillis - elapsed) / rule.windowMillis + current;
+            return count >= rule.limit ? rule.windowMillis - elapsed : 0;
+        }
+
+        synchronized void increment(long now, Rule rule) {
+            roll(now, rule);
+            current++;
+        }
+
+        private void roll(long now, Rule rule) {
+            long nowIndex = now / rule.windowMillis;
+            if (nowIndex == index) {
+                return;
+            }
+            previous = nowIndex == index + 1 ? current : 0;
+            current = 0;
+            index = nowIndex;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.hmdp.utils;
+
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 布隆过滤器，redis bitmap保存全量数据，本地bitmap作为镜像
+ * 本地判断存在直接返回；本地判断不存在时再查询redis，防止其他节点新增的数据被误判
+ * 加载完成前不做过滤；不大于已加载最大id的数据可能是延迟提交的，判断不存在时仍交给数据库确认
+ */
+public class RedisBloomFilter {
+
+    private final String key;
+    private final byte[] rawKey;
+    //对应的缓存key前缀，没有缓存时为空
+    private final String cachePrefix;
+    //本地镜像，与redis使用相同的位置计算
+    private final LocalBloomFilter local;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private volatile boolean ready = false;
+    //已添加的最大id
+    private final AtomicLong maxId = new AtomicLong();
+
+    /**
+     * @param key redis bitmap的key
+     * @param cachePrefix 对应的缓存key前缀
+     * @param expectedInsertions 预计数据量
+     * @param fpp 误判率
+     */
+    public RedisBloomFilter(String key, String cachePrefix, long expectedInsertions, double fpp,
+                            StringRedisTemplate stringRedisTemplate) {
+        this.key = key;
+        this.rawKey = key.getBytes(StandardCharsets.UTF_8);
+        this.cachePrefix = cachePrefix;
+        this.local = new LocalBloomFilter(expectedInsertions, fpp);
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    public String getCachePrefix() {
+        return cachePrefix;
+    }
+
+    /**
+     * 数据加载完成，开始过滤
+     */
+    public void markReady() {
+        ready = true;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void add(long id) {
+        addAll(Collections.singletonList(id));
+    }
+
+    public void addAll(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        maxId.accumulateAndGet(Collections.max(ids), Math::max);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long id : ids) {
+                long[] offsets = local.offsets(id);
+                local.set(offsets);
+                for (long offset : offsets) {
+                    connection.setBit(rawKey, offset, true);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 不存在时添加，数据库查询到过滤器中没有的数据时调用
+     */
+    public void addIfAbsent(long id) {
+        if (!local.contains(local.offsets(id))) {
+            add(id);
+        }
+    }
+
+    /**
+     * 是否可能存在，返回false时一定不存在
+     */
+    public boolean mightContain(long id) {
+        if (!ready) {
+            return true;
+        }
+        long[] offsets = local.offsets(id);
+        if (local.contains(offsets)) {
+            return true;
+        }
+        //小于已加载的最大id，可能是加载时还未提交的数据，交给数据库判断(不存在时会缓存空值)
+        if (id <= maxId.get()) {
+            return true;
+        }
+
+        //本地不存在，查询redis，可能是其他节点新增的数据
+        List<Object> bits = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long offset : offsets) {
+                connection.getBit(rawKey, offset);
+            }
+            return null;
+        });
+        for (Object bit : bits) {
+            if (!Boolean.TRUE.equals(bit)) {
+                return false;
+            }
+        }
+        //同步到本地
+        local.set(offsets);
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "RedisBloomFilter{key=" + key + ", " + local + "}";
+    }
+}
@@ -1,16 +1,26 @@
 package com.hmdp.utils;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
+@Slf4j
 @Component
-public class RedisIdGenerator {
+public class RedisIdGenerator implements IdGenerator {
 
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
@@ -18,6 +28,21 @@ public class RedisIdGenerator {
     //开始时间
     private static final long BEGIN_TIME = 1640995200L;
 
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    //号段消耗到该比例时预取下一个号段
+    private static final double PREFETCH_RATIO = 0.8;
+
+    //号段步长，大于0时启用号段模式，每次INCRBY预留一段id在本地分配
+    @Value("${hmdp.id.segment-step:0}")
+    private long segmentStep;
+
+    //每个前缀一个双缓冲号段
+    private final Map<String, SegmentBuffer> segmentBuffers = new ConcurrentHashMap<>();
+
+    //异步预取号段
+    private final ExecutorService segmentLoader = Executors.newSingleThreadExecutor();
+
     /**
      * 生成id
      * @param prefix key前缀
@@ -25,16 +50,144 @@ public class RedisIdGenerator {
      * [31] 时间戳
      * [32] 自增
      */
+    @Override
     public long nextId(String prefix){
         LocalDateTime now = LocalDateTime.now();
-        long nowSeconds = now.toEpochSecond(ZoneOffset.UTC);
-        long time = nowSeconds - BEGIN_TIME;
-        //作为key
-        String data = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-        Long count = redisTemplate.opsForValue().increment("icr:" + prefix + ":" + data);
+        long time = now.toEpochSecond(ZoneOffset.UTC) - BEGIN_TIME;
+        String key = counterKey(prefix, now);
+        long count = segmentStep > 0 ? nextSegmentCount(prefix, key) : increment(key, 1L);
+        return toId(time, count);
+    }
+
+    /**
+     * 号段模式在本地分配，不需要脚本
+     */
+    @Override
+    public ScriptCounter scriptCounter(String prefix) {
+        if (segmentStep > 0) {
+            return null;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        long time = now.toEpochSecond(ZoneOffset.UTC) - BEGIN_TIME;
+        return new ScriptCounter(counterKey(prefix, now), toId(time, 0));
+    }
+
+    private static String counterKey(String prefix, LocalDateTime now) {
+        //日期作为key
+        return "icr:" + prefix + ":" + now.format(DATE_FORMATTER);
+    }
+
+    private static long toId(long time, long count) {
+        return (time << 32) | (count & 0xFFFFFFFFL);
+    }
+
+    @PreDestroy
+    public void stop() {
+        segmentLoader.shutdown();
+    }
+
+    private long increment(String key, long delta) {
+        Long count = redisTemplate.opsForValue().increment(key, delta);
         if(count == null){
             throw new RuntimeException("生成id异常");
         }
-        return (time << 32) | (count & 0xFFFFFFFFL);
+        return count;
+    }
+
+    /**
+     * 号段模式获取自增值，日期变化后切换到新的key
+     */
+    private long nextSegmentCount(String prefix, String key) {
+        SegmentBuffer buffer = segmentBuffers.get(prefix);
+        if (buffer == null || !buffer.key.equals(key)) {
+            buffer = segmentBuffers.compute(prefix,
+                    (k, old) -> old == null || !old.key.equals(key) ? new SegmentBuffer(key) : old);
+        }
+        return buffer.nextCount();
+    }
+
+    /**
+     * 号段 (start, max]
+     */
+    private static class Segment {
+        private final long start;
+        private final long max;
+        private final AtomicLong cursor;
+
+        Segment(long max, long step) {
+            this.start = max - step + 1;
+            this.max = max;
+            this.cursor = new AtomicLong(start);
+        }
+    }
+
+    /**
+     * 双缓冲号段：当前号段消耗到一定比例时异步预取下一个号段，当前号段用完后切换
+     * 切换时预取尚未完成则等待预取结果，不重复INCRBY，保证号段按顺序使用
+     */
+    private class SegmentBuffer {
+        private final String key;
+        private volatile Segment current;
+        private volatile Future<Segment> next;
+
+        SegmentBuffer(String key) {
+            this.key = key;
+        }
+
+        long nextCount() {
+            while (true) {
+                Segment segment = current;
+                if (segment != null) {
+                    long value = segment.cursor.getAndIncrement();
+                    if (value <= segment.max) {
+                        if (value - segment.start >= segmentStep * PREFETCH_RATIO) {
+                            prefetch();
+                        }
+                        return value;
+                    }
+                }
+                //当前号段用完，切换到预取的号段，没有则同步获取
+                synchronized (this) {
+                    if (segment != current) {
+                        continue;
+                    }
+                    current = takeNext();
+                }
+            }
+        }
+
+        private void prefetch() {
+            if (next != null) {
+                return;
+            }
+            synchronized (this) {
+                if (next == null) {
+                    next = segmentLoader.submit(this::loadSegment);
+                }
+            }
+        }
+
+        /**
+         * 调用方持有锁
+         */
+        private Segment takeNext() {
+            Future<Segment> prefetched = next;
+            next = null;
+            if (prefetched != null) {
+                try {
+                    return prefetched.get();
+                } catch (ExecutionException e) {
+                    log.error("预取号段异常, key: {}", key, e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("生成id异常", e);
+                }
+            }
+            return loadSegment();
+        }
+
+        private Segment loadSegment() {
+            return new Segment(increment(key, segmentStep), segmentStep);
+        }
     }
 }
@@ -1,37 +1,159 @@
 package com.hmdp.utils;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_VERSION_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_VERSION_TTL;
 import static com.hmdp.utils.RedisConstants.LOCK_SHOP_KEY;
 
 /**
  * 缓存封装类
+ * 本地缓存(L1) + redis(L2)，删除和主动写入时通过redis发布订阅清除所有节点的本地缓存
  */
 @Component
 @Slf4j
 public class RedisUtils {
 
-    //线程池，用于重建缓存
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    //互斥锁重试次数和间隔(ms)
+    private static final int MUTEX_RETRY_TIMES = 10;
+    private static final long MUTEX_RETRY_INTERVAL = 50L;
+    //按前缀删除时每批SCAN和DEL的key数量
+    private static final int SCAN_COUNT = 1000;
+
+    //版本作为持久的数据代数使用(如店铺类型快照按版本比较是否需要重新加载)，不设置有效期
+    //否则版本过期后重新从1开始自增，可能与旧快照记录的版本相同
+    private static final Set<String> PERSISTENT_VERSION_KEYS = Collections.singleton(CACHE_SHOP_TYPE_KEY);
+
+    private static final byte[] CAS_SET_SCRIPT_BYTES;
+
+    static {
+        DefaultRedisScript<Long> casSetScript = new DefaultRedisScript<>();
+        casSetScript.setLocation(new ClassPathResource("cache_cas_set.lua"));
+        casSetScript.setResultType(Long.class);
+        CAS_SET_SCRIPT_BYTES = casSetScript.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    //本节点正在加载的key，同一key的并发请求共用一个加载结果
+    private static final Map<String, CompletableFuture<Object>> LOADING_FUTURES = new ConcurrentHashMap<>();
 
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    //线程池，用于重建缓存
+    @Autowired
+    private CacheRebuildExecutor cacheRebuildExecutor;
+    //布隆过滤器，防止缓存穿透
+    @Autowired
+    private List<RedisBloomFilter> bloomFilters;
+
+    //本地缓存最大条数
+    @Value("${hmdp.cache.local.maximum-size:10000}")
+    private long localMaximumSize;
+    //本地缓存有效期(s)
+    @Value("${hmdp.cache.local.expire-after-write:5}")
+    private long localExpireAfterWrite;
+    //提前刷新系数，越大越早刷新
+    @Value("${hmdp.cache.early-refresh-beta:1.0}")
+    private double earlyRefreshBeta;
+
+    //延迟双删的间隔(ms)
+    @Value("${hmdp.cache.double-delete-delay:500}")
+    private long doubleDeleteDelay;
+
+    private Cache<String, Object> localCache;
+
+    //延迟删除缓存
+    private final ScheduledExecutorService delayedDelete = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "cache-delayed-delete"));
+
+    //缓存key前缀 -> 布隆过滤器
+    private final Map<String, RedisBloomFilter> bloomFilterByPrefix = new HashMap<>();
+
+    @PostConstruct
+    private void init() {
+        localCache = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(localExpireAfterWrite, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        //收到失效消息，清除本地缓存
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> localCache.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        for (RedisBloomFilter bloomFilter : bloomFilters) {
+            if (bloomFilter.getCachePrefix() != null) {
+                bloomFilterByPrefix.put(bloomFilter.getCachePrefix(), bloomFilter);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        delayedDelete.shutdown();
+    }
 
     /**
      * 数据写入redis
      */
     public void set(String key, Object value, Long time, TimeUnit timeUnit){
         redisTemplate.opsForValue().set(key, value, time, timeUnit);
+        publishInvalidate(key);
+    }
+
+    /**
+     * 按版本写入redis，读取版本后缓存被删除时放弃写入，防止旧数据覆盖
+     * @param version 查询数据库前通过readVersion读取的版本
+     */
+    public void setIfUnchanged(String key, Object value, String version, Long time, TimeUnit timeUnit){
+        put(key, value, time, timeUnit, version);
     }
 
     /**
@@ -42,6 +164,122 @@ public class RedisUtils {
         redisData.setExpireTime(LocalDateTime.now().plusSeconds(timeUnit.toSeconds(expire)));
         redisData.setData(value);
         redisTemplate.opsForValue().set(key, redisData);
+        publishInvalidate(key);
+    }
+
+    /**
+     * 逻辑过期批量写入redis，通过pipeline一次发送，用于缓存预热
+     * 每条数据的过期时间增加随机偏移，防止同时过期集中重建
+     * 与其他回填路径一样按版本写入，查询数据库期间被删除的缓存不会被旧数据覆盖
+     * @param values key -> 数据
+     * @param versions 查询数据库前通过readVersions读取的版本
+     * @param jitter 过期时间最大随机偏移，与expire单位相同
+     */
+    public void setBatchWithLogicalExpire(Map<String, ?> values, Map<String, String> versions,
+                                          Long expire, Long jitter, TimeUnit timeUnit){
+        if(values.isEmpty()){
+            return;
+        }
+        long expireSeconds = timeUnit.toSeconds(expire);
+        long jitterSeconds = timeUnit.toSeconds(jitter);
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, RedisData> redisDataMap = new HashMap<>(values.size() * 4 / 3 + 1);
+        values.forEach((key, value) -> {
+            RedisData redisData = new RedisData();
+            redisData.setData(value);
+            redisData.setExpireTime(now.plusSeconds(expireSeconds + ThreadLocalRandom.current().nextLong(jitterSeconds + 1)));
+            redisData.setRebuildCost(0L);
+            redisDataMap.put(key, redisData);
+        });
+        putIfUnchanged(redisDataMap, versions, 0L);
+    }
+
+    /**
+     * 删除缓存，并清除所有节点的本地缓存
+     */
+    public void delete(String key){
+        deleteBatch(Collections.singletonList(key));
+    }
+
+    /**
+     * 事务提交后删除缓存，延迟一段时间后再删除一次
+     * 没有事务时立即执行
+     */
+    public void deleteAfterCommit(String key){
+        if(!TransactionSynchronizationManager.isSynchronizationActive()){
+            deleteTwice(key);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                deleteTwice(key);
+            }
+        });
+    }
+
+    /**
+     * 批量删除缓存，版本加1(使正在查询数据库的旧数据写入失败)、DEL和失效通知通过一次pipeline发送
+     */
+    public void deleteBatch(Collection<String> keys){
+        if(keys.isEmpty()){
+            return;
+        }
+        localCache.invalidateAll(keys);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            byte[][] rawKeys = new byte[keys.size()][];
+            int i = 0;
+            for (String key : keys) {
+                byte[] versionKey = (CACHE_VERSION_KEY + key).getBytes(StandardCharsets.UTF_8);
+                connection.incr(versionKey);
+                if(PERSISTENT_VERSION_KEYS.contains(key)){
+                    //清除旧版本遗留的有效期
+                    connection.persist(versionKey);
+                }else{
+                    connection.expire(versionKey, CACHE_VERSION_TTL);
+                }
+                rawKeys[i++] = key.getBytes(StandardCharsets.UTF_8);
+            }
+            connection.del(rawKeys);
+            byte[] channel = CACHE_INVALIDATE_CHANNEL.getBytes(StandardCharsets.UTF_8);
+            for (byte[] rawKey : rawKeys) {
+                connection.publish(channel, rawKey);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 删除该前缀下的全部缓存，通过SCAN分批查找key
+     * @return 删除的key数量
+     */
+    public long deleteByPrefix(String prefix){
+        ScanOptions options = ScanOptions.scanOptions().match(prefix + "*").count(SCAN_COUNT).build();
+        long count = 0;
+        try (Cursor<byte[]> cursor = stringRedisTemplate.execute(
+                (RedisCallback<Cursor<byte[]>>) connection -> connection.scan(options))) {
+            List<String> keys = new ArrayList<>(SCAN_COUNT);
+            while (cursor != null && cursor.hasNext()) {
+                keys.add(new String(cursor.next(), StandardCharsets.UTF_8));
+                if(keys.size() >= SCAN_COUNT){
+                    deleteBatch(keys);
+                    count += keys.size();
+                    keys.clear();
+                }
+            }
+            deleteBatch(keys);
+            count += keys.size();
+        } catch (IOException e) {
+            log.warn("关闭scan游标失败: {}", prefix, e);
+        }
+        return count;
+    }
+
+    /**
+     * 本地缓存命中统计
+     */
+    public CacheStats localCacheStats(){
+        return localCache.stats();
     }
 
     /**
@@ -55,9 +293,14 @@ public class RedisUtils {
      * @param <ID> 查询id类型
      */
     public <R, ID> R queryWithPassThrough(String prefix, ID id, Function<ID, R> dbFallBack, Long time, TimeUnit timeUnit, Class<R> clazz){
+        //布隆过滤器判断不存在，直接返回
+        if(!mightExist(prefix, id)){
+            return null;
+        }
+
         //查询缓存
         String key = prefix + id;
-        Object cache = redisTemplate.opsForValue().get(key);
+        Object cache = get(key);
 
         //缓存命中
         if (cache != null) {
@@ -71,17 +314,19 @@ public class RedisUtils {
             return clazz.cast(cache);
         }
 
-        //缓存未命中，查询数据库
+        //缓存未命中，记录版本，查询数据库
+        String version = readVersion(key);
         R r = dbFallBack.apply(id);
 
         //查询为空，写入空串,返回空
         if(r == null){
-            redisTemplate.opsForValue().set(key, "", 1L, TimeUnit.MINUTES);
+            put(key, "", 1L, TimeUnit.MINUTES, version);
             return null;
         }
 
         //不为空，数据写入缓存
-        redisTemplate.opsForValue().set(key, r, time, timeUnit);
+        markExist(prefix, id);
+        put(key, r, time, timeUnit, version);
 
         //返回数据
         return r;
@@ -89,6 +334,7 @@ public class RedisUtils {
 
     /**
      * 互斥锁解决缓存击穿
+     * 本节点同一key的并发未命中合并为一次加载(single-flight)，再由redis互斥锁保证集群内只有一个节点查询数据库
      */
     public <R, ID> R queryWithMutex(String prefix,
                                     ID id,
@@ -96,43 +342,108 @@ public class RedisUtils {
                                     Long time,
                                     TimeUnit timeUnit,
                                     Class<R> clazz){
+        //布隆过滤器判断不存在，直接返回
+        if(!mightExist(prefix, id)){
+            return null;
+        }
+
         //查询缓存
         String key = prefix + id;
-        Object cache = redisTemplate.opsForValue().get(key);
+        Object cache = get(key);
 
-        //缓存为空，尝试获取锁
+        //缓存为空，合并本节点的并发加载
         if(cache == null){
-            String lockKey = LOCK_SHOP_KEY + id;
-            String lock = tryLock(lockKey);
-            try {
-                //未获取到锁，休眠一会，重新查询缓存，返回数据
-                if(lock == null){
-                    try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException e) {
-                        throw new RuntimeException(e);
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            CompletableFuture<Object> loading = LOADING_FUTURES.putIfAbsent(key, future);
+            if(loading != null){
+                //已有线程在加载，等待加载完成，加载失败时抛出原始异常
+                try {
+                    cache = loading.join();
+                } catch (CompletionException e) {
+                    Throwable cause = e.getCause();
+                    if(cause instanceof RuntimeException){
+                        throw (RuntimeException) cause;
                     }
+                    if(cause instanceof Error){
+                        throw (Error) cause;
+                    }
+                    throw new RuntimeException(cause);
                 }
-
-                //获取到锁，查询数据库，写入缓存，返回数据,释放锁
-                R r = dbFallBack.apply(id);
-                if(r == null) {
-                    redisTemplate.opsForValue().set(key, "", 1L, TimeUnit.MINUTES);
-                    return null;
+            } else {
+                try {
+                    cache = loadWithMutex(key, id, dbFallBack, time, timeUnit);
+                    if(!"".equals(cache)){
+                        markExist(prefix, id);
+                    }
+                    future.complete(cache);
+                } catch (RuntimeException | Error e) {
+                    future.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    LOADING_FUTURES.remove(key, future);
                 }
-                redisTemplate.opsForValue().set(key, r, time, timeUnit);
-                return r;
-            } catch (RuntimeException e) {
-                throw new RuntimeException(e);
-            } finally {
-                unLock(lockKey, lock);
             }
         }
 
+        //缓存为空值，返回空
+        if("".equals(cache)){
+            return null;
+        }
+
         //缓存不为空，返回数据
         return clazz.cast(cache);
     }
 
+    /**
+     * 获取互斥锁后查询数据库重建缓存；未获取到锁时等待其他节点重建后重新查询缓存
+     * @return 缓存数据，数据不存在时返回空串
+     */
+    private <R, ID> Object loadWithMutex(String key, ID id, Function<ID, R> dbFallBack, Long time, TimeUnit timeUnit){
+        String lockKey = LOCK_SHOP_KEY + id;
+        for (int i = 0; i < MUTEX_RETRY_TIMES; i++) {
+            String lock = tryLock(lockKey);
+            if(lock != null){
+                try {
+                    //获取到锁，再次查询缓存，防止其他节点刚刚完成重建
+                    Object cache = redisTemplate.opsForValue().get(key);
+                    if(cache != null){
+                        localCache.put(key, cache);
+                        return cache;
+                    }
+
+                    //查询数据库，写入缓存
+                    String version = readVersion(key);
+                    R r = dbFallBack.apply(id);
+                    if(r == null) {
+                        put(key, "", 1L, TimeUnit.MINUTES, version);
+                        return "";
+                    }
+                    put(key, r, time, timeUnit, version);
+                    return r;
+                } finally {
+                    unLock(lockKey, lock);
+                }
+            }
+
+            //未获取到锁，休眠一会，重新查询缓存
+            try {
+                Thread.sleep(MUTEX_RETRY_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            Object cache = redisTemplate.opsForValue().get(key);
+            if(cache != null){
+                localCache.put(key, cache);
+                return cache;
+            }
+        }
+
+        //重试次数用完，直接查询数据库
+        R r = dbFallBack.apply(id);
+        return r == null ? "" : r;
+    }
+
     /**
      * 缓存击穿--逻辑过期
      */
@@ -140,22 +451,28 @@ public class RedisUtils {
                                             ID id, Function<ID, R> dbFallBack,
                                             Long time, TimeUnit timeUnit,
                                             Class<R> clazz){
+        //布隆过滤器判断不存在，直接返回
+        if(!mightExist(prefix, id)){
+            return null;
+        }
+
         //查询缓存
         String key = prefix + id;
-        RedisData cache = (RedisData)redisTemplate.opsForValue().get(key);
+        Object value = get(key);
+
+        //缓存为空值，返回空
+        if("".equals(value)){
+            return null;
+        }
+        RedisData cache = (RedisData) value;
 
         //缓存未命中，查询数据库，写入缓存，返回数据
         if(cache == null){
-            R r = dbFallBack.apply(id);
-            if(r == null){
-                redisTemplate.opsForValue().set(key, "", 1L, TimeUnit.MINUTES);
-                return null;
+            R r = loadLogicalExpire(key, id, dbFallBack, time, timeUnit);
+            if(r != null){
+                markExist(prefix, id);
             }
-            RedisData redisData = new RedisData();
-            redisData.setData(r);
-            redisData.setExpireTime(LocalDateTime.now().plusSeconds(timeUnit.toSeconds(time)));
-            redisTemplate.opsForValue().set(key, redisData);
-            return r;
+            return clazz.cast(r);
         }
 
         //缓存命中，判断是否过期
@@ -167,33 +484,365 @@ public class RedisUtils {
             return r;
         }
 
-        //过期，尝试获取锁
+        //过期，本地缓存的数据可能已被其他节点重建，重新查询redis
+        RedisData latest = reloadNewer(key, cache);
+        if(latest != null && LocalDateTime.now().isBefore(latest.getExpireTime())){
+            return clazz.cast(latest.getData());
+        }
+
+        //过期，异步重建，返回旧数据
+        rebuildAsync(key, id, dbFallBack, time, timeUnit);
+        return r;
+    }
+
+    /**
+     * 逻辑过期 + 概率提前刷新(XFetch)
+     * 根据上次重建耗时和剩余有效期计算是否提前刷新，越接近过期、重建越慢，提前刷新的概率越大，
+     * 避免所有节点在过期时刻同时争抢重建
+     */
+    public <R, ID> R queryWithEarlyRefresh(String prefix,
+                                           ID id, Function<ID, R> dbFallBack,
+                                           Long time, TimeUnit timeUnit,
+                                           Class<R> clazz){
+        //布隆过滤器判断不存在，直接返回
+        if(!mightExist(prefix, id)){
+            return null;
+        }
+
+        //查询缓存
+        String key = prefix + id;
+        Object value = get(key);
+
+        //缓存为空值，返回空
+        if("".equals(value)){
+            return null;
+        }
+        RedisData cache = (RedisData) value;
+
+        //缓存未命中，查询数据库，写入缓存，返回数据
+        if(cache == null){
+            R r = loadLogicalExpire(key, id, dbFallBack, time, timeUnit);
+            if(r != null){
+                markExist(prefix, id);
+            }
+            return clazz.cast(r);
+        }
+
+        R r = clazz.cast(cache.getData());
+
+        //now - cost * beta * ln(rand) >= expireTime 时刷新
+        long cost = cache.getRebuildCost() == null ? 0L : cache.getRebuildCost();
+        long expireMillis = cache.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        double gap = -cost * earlyRefreshBeta * Math.log(ThreadLocalRandom.current().nextDouble());
+        if(System.currentTimeMillis() + gap < expireMillis){
+            return r;
+        }
+
+        //redis中已有其他节点刷新后的数据，不再刷新
+        RedisData latest = reloadNewer(key, cache);
+        if(latest != null){
+            return clazz.cast(latest.getData());
+        }
+
+        //提前刷新或已过期，异步重建，返回旧数据
+        rebuildAsync(key, id, dbFallBack, time, timeUnit);
+        return r;
+    }
+
+    /**
+     * 需要重建时，清除本地缓存并重新查询redis，其他节点重建后只更新了redis和自己的本地缓存
+     * @return redis中比cache更新的数据，没有时返回空
+     */
+    private RedisData reloadNewer(String key, RedisData cache){
+        localCache.invalidate(key);
+        Object latest = redisTemplate.opsForValue().get(key);
+        if(!(latest instanceof RedisData)){
+            return null;
+        }
+        RedisData data = (RedisData) latest;
+        localCache.put(key, data);
+        return data.getExpireTime().isAfter(cache.getExpireTime()) ? data : null;
+    }
+
+    /**
+     * 同步查询数据库写入逻辑过期缓存
+     * @return 查询结果，数据不存在时返回空
+     */
+    private <R, ID> R loadLogicalExpire(String key, ID id, Function<ID, R> dbFallBack, Long time, TimeUnit timeUnit){
+        String version = readVersion(key);
+        long begin = System.currentTimeMillis();
+        R r = dbFallBack.apply(id);
+        if(r == null){
+            put(key, "", 1L, TimeUnit.MINUTES, version);
+            return null;
+        }
+        put(key, toRedisData(r, time, timeUnit, System.currentTimeMillis() - begin), 0L, TimeUnit.MILLISECONDS, version);
+        return r;
+    }
+
+    /**
+     * 获取锁后提交重建任务；本节点已在重建、未获取锁或队列已满时直接返回
+     */
+    private <R, ID> void rebuildAsync(String key, ID id, Function<ID, R> dbFallBack, Long time, TimeUnit timeUnit){
+        //本节点已在重建
+        if(cacheRebuildExecutor.isRebuilding(key)){
+            return;
+        }
+
+        //尝试获取锁，未获取锁，由其他节点重建
         String lockKey = LOCK_SHOP_KEY + id;
         String lock = tryLock(lockKey);
+        if(lock == null){
+            return;
+        }
 
-        try {
-            //未索取锁，返回旧数据
-            if(lock == null || lock.isEmpty()){
-                return r;
+        //获取锁，提交重建任务，查询数据库，重建缓存，释放锁
+        boolean submitted = cacheRebuildExecutor.submit(key, () -> {
+            try {
+                loadLogicalExpire(key, id, dbFallBack, time, timeUnit);
+            } finally {
+                unLock(lockKey, lock);
             }
+        });
+        //队列已满，放弃重建
+        if(!submitted){
+            unLock(lockKey, lock);
+        }
+    }
+
+    private RedisData toRedisData(Object value, Long time, TimeUnit timeUnit, long rebuildCost){
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(LocalDateTime.now().plusSeconds(timeUnit.toSeconds(time)));
+        redisData.setRebuildCost(rebuildCost);
+        return redisData;
+    }
 
-            //获取锁，开启新线程，查询数据库，重建缓存，释放锁，返回旧数据
-            CACHE_REBUILD_EXECUTOR.submit(()->{
-                R r1 = dbFallBack.apply(id);
-                if(r1 == null){
-                    redisTemplate.opsForValue().set(key, "", 1L, TimeUnit.MINUTES);
+    /**
+     * 批量查询，与queryWithLogicalExpire共用缓存格式
+     * 本地缓存 -> 一次MGET -> 一次批量查询数据库，未命中的数据通过pipeline回写，按输入顺序返回
+     * 已过期的缓存视为未命中，随本次批量查询一起刷新
+     * @param ids 查询id列表
+     * @param dbBatchFallBack 数据库批量查询函数
+     * @param idGetter 从查询结果中获取id
+     * @param time 逻辑过期时间
+     * @param timeUnit 逻辑过期时间单位
+     * @return 按ids顺序排列的数据，不存在的数据被跳过
+     */
+    public <R, ID> List<R> queryBatch(String prefix,
+                                      List<ID> ids,
+                                      Function<List<ID>, List<R>> dbBatchFallBack,
+                                      Function<R, ID> idGetter,
+                                      Long time, TimeUnit timeUnit,
+                                      Class<R> clazz){
+        Map<ID, R> found = new HashMap<>();
+
+        //查询本地缓存，布隆过滤器判断不存在或缓存空值的不再查询redis和数据库
+        List<ID> remoteIds = new ArrayList<>();
+        for (ID id : ids) {
+            if(!mightExist(prefix, id)){
+                continue;
+            }
+            if(!collectBatchHit(id, localCache.getIfPresent(prefix + id), found, clazz)){
+                remoteIds.add(id);
+            }
+        }
+
+        //一次MGET查询redis
+        List<ID> missIds = new ArrayList<>();
+        if(!remoteIds.isEmpty()){
+            List<String> keys = remoteIds.stream().map(id -> prefix + id).collect(Collectors.toList());
+            List<Object> values = redisTemplate.opsForValue().multiGet(keys);
+            for (int i = 0; i < remoteIds.size(); i++) {
+                Object value = values == null ? null : values.get(i);
+                ID id = remoteIds.get(i);
+                if(collectBatchHit(id, value, found, clazz)){
+                    localCache.put(keys.get(i), value);
+                } else {
+                    missIds.add(id);
                 }
-                RedisData redisData = new RedisData();
-                redisData.setData(r1);
-                redisData.setExpireTime(LocalDateTime.now().plusSeconds(timeUnit.toSeconds(time)));
-                redisTemplate.opsForValue().set(key, redisData);
-            });
+            }
+        }
+
+        //一次批量查询数据库，pipeline回写缓存
+        if(!missIds.isEmpty()){
+            List<String> missKeys = missIds.stream().map(id -> prefix + id).collect(Collectors.toList());
+            Map<String, String> versions = readVersions(missKeys);
+            Map<String, Object> loaded = new HashMap<>();
+            for (R r : dbBatchFallBack.apply(missIds)) {
+                ID id = idGetter.apply(r);
+                found.put(id, r);
+                markExist(prefix, id);
+                loaded.put(prefix + id, toRedisData(r, time, timeUnit, 0L));
+            }
+            Map<String, Object> empty = new HashMap<>();
+            for (ID id : missIds) {
+                if(!found.containsKey(id)){
+                    empty.put(prefix + id, "");
+                }
+            }
+            putIfUnchanged(loaded, versions, 0L);
+            putIfUnchanged(empty, versions, TimeUnit.MINUTES.toMillis(1L));
+        }
+
+        //按输入顺序返回
+        List<R> result = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            R r = found.get(id);
+            if(r != null){
+                result.add(r);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量查询的缓存命中判断，命中数据时放入found
+     * @return true: 命中(数据或空值)，false: 未命中或已过期
+     */
+    private <R, ID> boolean collectBatchHit(ID id, Object cache, Map<ID, R> found, Class<R> clazz){
+        if(cache == null){
+            return false;
+        }
+        if("".equals(cache)){
+            return true;
+        }
+        if(cache instanceof RedisData){
+            RedisData redisData = (RedisData) cache;
+            if(!LocalDateTime.now().isBefore(redisData.getExpireTime())){
+                return false;
+            }
+            found.put(id, clazz.cast(redisData.getData()));
+            return true;
+        }
+        found.put(id, clazz.cast(cache));
+        return true;
+    }
+
+    /**
+     * 布隆过滤器判断数据是否可能存在，没有对应的过滤器时不过滤
+     */
+    private boolean mightExist(String prefix, Object id){
+        RedisBloomFilter bloomFilter = bloomFilterByPrefix.get(prefix);
+        if(bloomFilter == null || !(id instanceof Number)){
+            return true;
+        }
+        return bloomFilter.mightContain(((Number) id).longValue());
+    }
+
+    /**
+     * 数据库查询到数据，布隆过滤器中没有时补充(延迟提交或加载后新增的数据)
+     */
+    private void markExist(String prefix, Object id){
+        RedisBloomFilter bloomFilter = bloomFilterByPrefix.get(prefix);
+        if(bloomFilter != null && id instanceof Number){
+            bloomFilter.addIfAbsent(((Number) id).longValue());
+        }
+    }
+
+    /**
+     * 先查本地缓存，未命中再查redis并写入本地缓存
+     */
+    private Object get(String key){
+        Object cache = localCache.getIfPresent(key);
+        if(cache != null){
+            return cache;
+        }
+        cache = redisTemplate.opsForValue().get(key);
+        if(cache != null){
+            localCache.put(key, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * 查询数据库后回填redis和本地缓存，查询期间缓存被删除时放弃写入
+     * @param time 有效期，0表示不过期
+     * @param version 查询数据库前读取的版本
+     */
+    private void put(String key, Object value, Long time, TimeUnit timeUnit, String version){
+        putIfUnchanged(Collections.singletonMap(key, value), Collections.singletonMap(key, version), timeUnit.toMillis(time));
+    }
+
+    /**
+     * 通过pipeline按版本批量写入，写入成功的数据同时写入本地缓存
+     * @param values key -> 数据
+     * @param versions key -> 查询数据库前读取的版本
+     * @param ttlMillis 有效期(ms)，0表示不过期
+     */
+    private void putIfUnchanged(Map<String, ?> values, Map<String, String> versions, long ttlMillis){
+        if(values.isEmpty()){
+            return;
+        }
+        List<String> keys = new ArrayList<>(values.keySet());
+        RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        byte[] ttl = String.valueOf(ttlMillis).getBytes(StandardCharsets.UTF_8);
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                connection.eval(CAS_SET_SCRIPT_BYTES, ReturnType.INTEGER, 2,
+                        key.getBytes(StandardCharsets.UTF_8),
+                        (CACHE_VERSION_KEY + key).getBytes(StandardCharsets.UTF_8),
+                        valueSerializer.serialize(values.get(key)),
+                        versions.getOrDefault(key, "0").getBytes(StandardCharsets.UTF_8),
+                        ttl);
+            }
+            return null;
+        });
+        for (int i = 0; i < keys.size(); i++) {
+            if(Long.valueOf(1L).equals(results.get(i))){
+                localCache.put(keys.get(i), values.get(keys.get(i)));
+            } else {
+                log.debug("查询期间缓存已失效, 放弃写入: {}", keys.get(i));
+            }
+        }
+    }
+
+    /**
+     * 查询数据库前读取缓存版本，每次删除缓存时版本加1
+     */
+    public String readVersion(String key){
+        String version = stringRedisTemplate.opsForValue().get(CACHE_VERSION_KEY + key);
+        return version == null ? "0" : version;
+    }
+
+    /**
+     * 批量读取缓存版本，查询数据库前调用
+     */
+    public Map<String, String> readVersions(List<String> keys){
+        List<String> versionKeys = keys.stream().map(key -> CACHE_VERSION_KEY + key).collect(Collectors.toList());
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(versionKeys);
+        Map<String, String> versions = new HashMap<>(keys.size() * 4 / 3 + 1);
+        for (int i = 0; i < keys.size(); i++) {
+            String version = values == null ? null : values.get(i);
+            versions.put(keys.get(i), version == null ? "0" : version);
+        }
+        return versions;
+    }
+
+    /**
+     * 立即删除缓存，并延迟再删除一次，清除删除前已开始、删除后才写入的旧数据
+     */
+    private void deleteTwice(String key){
+        try {
+            delete(key);
         } catch (Exception e) {
-            throw new RuntimeException(e);
-        } finally {
-            unLock(lockKey, lock);
+            log.error("删除缓存失败: {}", key, e);
         }
-        return r;
+        delayedDelete.schedule(() -> {
+            try {
+                delete(key);
+            } catch (Exception e) {
+                log.error("延迟删除缓存失败: {}", key, e);
+            }
+        }, doubleDeleteDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 通知所有节点清除本地缓存
+     */
+    private void publishInvalidate(String key){
+        localCache.invalidate(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
     }
 
     /**
@@ -0,0 +1,95 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_CHANNEL;
+
+/**
+ * 本地售罄标记，售罄的秒杀卷直接在本地拒绝，不再访问redis
+ * 分片库存模式下同时记录已售罄的分片，借库存时跳过；全部分片售罄时标记整个秒杀卷售罄
+ * 库存补充时通过redis发布订阅通知所有节点清除标记
+ */
+@Slf4j
+@Component
+public class SeckillSoldOutRegistry implements MessageListener {
+
+    private final Set<Long> soldOut = ConcurrentHashMap.newKeySet();
+    //秒杀卷id -> 已售罄的分片
+    private final Map<Long, Set<Integer>> emptyShards = new ConcurrentHashMap<>();
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @PostConstruct
+    private void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(SECKILL_STOCK_CHANNEL));
+    }
+
+    /**
+     * 是否已售罄
+     */
+    public boolean isSoldOut(Long voucherId) {
+        return soldOut.contains(voucherId);
+    }
+
+    /**
+     * 标记售罄
+     */
+    public void markSoldOut(Long voucherId) {
+        soldOut.add(voucherId);
+    }
+
+    /**
+     * 分片是否已售罄
+     */
+    public boolean isShardEmpty(Long voucherId, int shard) {
+        Set<Integer> shards = emptyShards.get(voucherId);
+        return shards != null && shards.contains(shard);
+    }
+
+    /**
+     * 标记分片售罄，全部分片都售罄时标记秒杀卷售罄
+     */
+    public void markShardEmpty(Long voucherId, int shard, int shardCount) {
+        Set<Integer> shards = emptyShards.computeIfAbsent(voucherId, k -> ConcurrentHashMap.newKeySet());
+        shards.add(shard);
+        if (shards.size() >= shardCount) {
+            soldOut.add(voucherId);
+        }
+    }
+
+    /**
+     * 库存补充，通知所有节点清除售罄标记
+     */
+    public void publishReplenished(Long voucherId) {
+        soldOut.remove(voucherId);
+        emptyShards.remove(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_STOCK_CHANNEL, String.valueOf(voucherId));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String voucherId = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            soldOut.remove(Long.valueOf(voucherId));
+            emptyShards.remove(Long.valueOf(voucherId));
+        } catch (NumberFormatException e) {
+            log.error("库存补充消息格式错误: {}", voucherId);
+        }
+    }
+}
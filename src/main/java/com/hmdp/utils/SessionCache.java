@@ -0,0 +1,269 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.lang.UUID;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.dto.UserDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_LOGOUT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_TOKENS_KEY;
+
+/**
+ * 登录会话近端缓存，会话以hash保存在redis中
+ * 本地缓存token对应的用户和redis中的过期时间，本地命中时不访问redis；
+ * 剩余有效期低于阈值时才发送EXPIRE续期；登出时通过redis发布订阅清除所有节点的本地缓存
+ * 每个用户的token记录在会话索引(zset)中，用于退出全部登录和限制会话数量
+ */
+@Component
+public class SessionCache implements SessionManager {
+
+    private static final DefaultRedisScript<List> CREATE_SCRIPT;
+    private static final DefaultRedisScript<List> REMOVE_ALL_SCRIPT;
+
+    static {
+        CREATE_SCRIPT = new DefaultRedisScript<>();
+        CREATE_SCRIPT.setLocation(new ClassPathResource("session_create.lua"));
+        CREATE_SCRIPT.setResultType(List.class);
+        REMOVE_ALL_SCRIPT = new DefaultRedisScript<>();
+        REMOVE_ALL_SCRIPT.setLocation(new ClassPathResource("session_remove_all.lua"));
+        REMOVE_ALL_SCRIPT.setResultType(List.class);
+    }
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    //本地缓存最大条数
+    @Value("${hmdp.session.local.maximum-size:10000}")
+    private long localMaximumSize;
+    //本地缓存有效期(s)
+    @Value("${hmdp.session.local.expire-after-write:5}")
+    private long localExpireAfterWrite;
+    //会话有效期(min)
+    @Value("${hmdp.session.ttl:60}")
+    private long ttl;
+    //剩余有效期低于该值(min)时续期
+    @Value("${hmdp.session.refresh-threshold:50}")
+    private long refreshThreshold;
+    //每个用户最大会话数，超过时删除最早的会话
+    @Value("${hmdp.session.max-per-user:5}")
+    private int maxPerUser;
+
+    private Cache<String, Session> localCache;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder redisCommands = new LongAdder();
+
+    @PostConstruct
+    private void init() {
+        localCache = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(localExpireAfterWrite, TimeUnit.SECONDS)
+                .build();
+        //收到登出消息，清除本地缓存
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> localCache.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(LOGIN_LOGOUT_CHANNEL));
+    }
+
+    /**
+     * 保存用户到redis中,以随机token(UUID)为key，同时写入会话索引，超过上限时删除最早的会话
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public String create(UserDTO user) {
+        String token = UUID.randomUUID().toString(true);
+
+        //将对象转为Hash存储，field和value的序列化方式与redisTemplate一致
+        Map<String, Object> userMap = BeanUtil.beanToMap(user);
+        RedisSerializer<Object> hashValueSerializer = redisTemplate.getHashValueSerializer();
+        List<byte[]> args = new ArrayList<>();
+        args.add(bytes(token));
+        args.add(bytes(String.valueOf(System.currentTimeMillis())));
+        args.add(bytes(String.valueOf(TimeUnit.MINUTES.toSeconds(ttl))));
+        args.add(bytes(String.valueOf(maxPerUser)));
+        args.add(bytes(LOGIN_USER_KEY));
+        userMap.forEach((field, value) -> {
+            args.add(bytes(field));
+            args.add(hashValueSerializer.serialize(value));
+        });
+
+        //一次脚本完成清理、淘汰和保存
+        List<String> evicted = (List<String>) redisTemplate.execute(CREATE_SCRIPT, RedisSerializer.byteArray(),
+                RedisSerializer.string(), Arrays.asList(LOGIN_USER_KEY + token, LOGIN_USER_TOKENS_KEY + user.getId()),
+                args.toArray());
+        publishLogout(evicted);
+        return token;
+    }
+
+    /**
+     * 先查本地缓存，未命中再查redis，剩余有效期低于阈值时续期
+     */
+    @Override
+    public UserDTO get(String token, HttpServletResponse response) {
+        requests.increment();
+        long now = System.currentTimeMillis();
+        Session session = localCache.getIfPresent(token);
+        if (session != null && session.expireAt > now) {
+            localHits.increment();
+        } else {
+            session = load(token, now);
+            if (session == null) {
+                return null;
+            }
+        }
+
+        //剩余有效期低于阈值，会话和会话索引一起续期
+        if (session.expireAt - now < TimeUnit.MINUTES.toMillis(refreshThreshold)) {
+            redisCommands.add(2);
+            byte[] tokenKey = bytes(LOGIN_USER_KEY + token);
+            byte[] indexKey = bytes(LOGIN_USER_TOKENS_KEY + session.user.getId());
+            long seconds = TimeUnit.MINUTES.toSeconds(ttl);
+            List<Object> renewed = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.expire(tokenKey, seconds);
+                connection.expire(indexKey, seconds);
+                return null;
+            });
+            if (!Boolean.TRUE.equals(renewed.get(0))) {
+                //会话已不存在
+                localCache.invalidate(token);
+                return null;
+            }
+            session.expireAt = now + TimeUnit.MINUTES.toMillis(ttl);
+        }
+        return session.user;
+    }
+
+    /**
+     * 删除会话，并清除所有节点的本地缓存
+     */
+    @Override
+    public void invalidate(String token) {
+        String tokenKey = LOGIN_USER_KEY + token;
+        Session session = localCache.getIfPresent(token);
+        Object userId = session != null ? session.user.getId() : redisTemplate.opsForHash().get(tokenKey, "id");
+        localCache.invalidate(token);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.del(bytes(tokenKey));
+            if (userId != null) {
+                connection.zRem(bytes(LOGIN_USER_TOKENS_KEY + userId), bytes(token));
+            }
+            connection.publish(bytes(LOGIN_LOGOUT_CHANNEL), bytes(token));
+            return null;
+        });
+    }
+
+    /**
+     * 根据会话索引删除用户的全部会话，并清除所有节点的本地缓存
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void invalidateAll(Long userId) {
+        List<String> tokens = stringRedisTemplate.execute(REMOVE_ALL_SCRIPT,
+                Collections.singletonList(LOGIN_USER_TOKENS_KEY + userId), LOGIN_USER_KEY);
+        publishLogout(tokens);
+    }
+
+    /**
+     * 会话缓存指标
+     */
+    public Map<String, Object> metrics() {
+        long total = requests.sum();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("requests", total);
+        metrics.put("localHits", localHits.sum());
+        metrics.put("redisCommands", redisCommands.sum());
+        //未使用近端缓存时每次请求2条命令(HGETALL + EXPIRE)
+        metrics.put("redisCommandsPerRequest", total == 0 ? 0 : (double) redisCommands.sum() / total);
+        return metrics;
+    }
+
+    /**
+     * 通知所有节点清除这些token的本地缓存
+     */
+    private void publishLogout(List<String> tokens) {
+        if (tokens == null || tokens.isEmpty()) {
+            return;
+        }
+        localCache.invalidateAll(tokens);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String token : tokens) {
+                connection.publish(bytes(LOGIN_LOGOUT_CHANNEL), bytes(token));
+            }
+            return null;
+        });
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 通过一次pipeline查询用户和剩余有效期
+     */
+    @SuppressWarnings("unchecked")
+    private Session load(String token, long now) {
+        String tokenKey = LOGIN_USER_KEY + token;
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                operations.opsForHash().entries(tokenKey);
+                operations.getExpire(tokenKey, TimeUnit.MILLISECONDS);
+                return null;
+            }
+        });
+        redisCommands.add(2);
+        Map<Object, Object> map = (Map<Object, Object>) results.get(0);
+        Long remaining = (Long) results.get(1);
+        if (map == null || map.isEmpty() || remaining == null || remaining == -2) {
+            localCache.invalidate(token);
+            return null;
+        }
+
+        //将获得的Hash数据转成对象
+        Session session = new Session();
+        session.user = BeanUtil.fillBeanWithMap(map, new UserDTO(), false);
+        //没有设置过期时间时立即续期
+        session.expireAt = remaining < 0 ? now : now + remaining;
+        localCache.put(token, session);
+        return session;
+    }
+
+    private static class Session {
+        private UserDTO user;
+        //估计的redis过期时间(ms)
+        private volatile long expireAt;
+    }
+}
@@ -0,0 +1,34 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 登录会话管理
+ */
+public interface SessionManager {
+
+    /**
+     * 创建会话
+     * @return token
+     */
+    String create(UserDTO user);
+
+    /**
+     * 根据token获取登录用户，必要时续期
+     * @param response 续期产生新token时通过响应头返回
+     * @return 登录用户，未登录或已过期时返回空
+     */
+    UserDTO get(String token, HttpServletResponse response);
+
+    /**
+     * 删除会话
+     */
+    void invalidate(String token);
+
+    /**
+     * 删除用户的全部会话(退出全部登录)
+     */
+    void invalidateAll(Long userId);
+}
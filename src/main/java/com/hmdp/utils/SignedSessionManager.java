@@ -0,0 +1,312 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKED_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKED_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKED_USER_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKED_USER_KEY;
+
+/**
+ * 无状态签名token，用户信息和过期时间编码在token中，本地校验HMAC签名，不访问redis
+ * token格式：base64url(数据).base64url(HMAC-SHA256签名)
+ * 登出的token id保存在redis zset中(score为保留截止时间)，本地布隆过滤器判断可能已登出时才查询redis
+ * 退出全部登录时按用户记录，截止时间之前签发的token全部失效
+ * 剩余有效期低于阈值时签发新token(token id不变)，通过响应头返回
+ */
+@Slf4j
+@Primary
+@Component
+@ConditionalOnProperty(name = "hmdp.session.mode", havingValue = "signed")
+public class SignedSessionManager implements SessionManager {
+
+    //续期后的新token通过该响应头返回
+    public static final String RENEWED_TOKEN_HEADER = "renewed-token";
+
+    private static final byte VERSION = 1;
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    //HMAC密钥
+    @Value("${hmdp.session.secret:}")
+    private String secret;
+    //会话有效期(min)
+    @Value("${hmdp.session.ttl:60}")
+    private long ttl;
+    //剩余有效期低于该值(min)时续期
+    @Value("${hmdp.session.refresh-threshold:50}")
+    private long refreshThreshold;
+    //已登出token布隆过滤器的预计数据量和误判率
+    @Value("${hmdp.session.revocation.expected-insertions:100000}")
+    private long expectedInsertions;
+    @Value("${hmdp.session.revocation.fpp:0.001}")
+    private double fpp;
+    //重建布隆过滤器的间隔(s)，同时清理redis中已过期的记录
+    @Value("${hmdp.session.revocation.rebuild-interval:600}")
+    private long rebuildInterval;
+
+    private ThreadLocal<Mac> mac;
+
+    //已登出的token id
+    private RevocationList revokedTokens;
+    //退出全部登录的用户id
+    private RevocationList revokedUsers;
+
+    private final ScheduledExecutorService rebuilder = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "session-revocation-rebuilder"));
+
+    @PostConstruct
+    private void init() {
+        if (StrUtil.isBlank(secret)) {
+            throw new IllegalStateException("signed模式需要配置hmdp.session.secret");
+        }
+        SecretKeySpec key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac instance = Mac.getInstance(ALGORITHM);
+                instance.init(key);
+                return instance;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("初始化HMAC失败", e);
+            }
+        });
+
+        revokedTokens = new RevocationList(LOGIN_REVOKED_KEY, LOGIN_REVOKED_CHANNEL);
+        revokedUsers = new RevocationList(LOGIN_REVOKED_USER_KEY, LOGIN_REVOKED_USER_CHANNEL);
+        rebuilder.scheduleWithFixedDelay(() -> {
+            revokedTokens.rebuild();
+            revokedUsers.rebuild();
+        }, 0, rebuildInterval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        rebuilder.shutdown();
+    }
+
+    @Override
+    public String create(UserDTO user) {
+        long expireAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(ttl);
+        return sign(new Token(ThreadLocalRandom.current().nextLong(), user, expireAt));
+    }
+
+    @Override
+    public UserDTO get(String token, HttpServletResponse response) {
+        Token parsed = verify(token);
+        if (parsed == null) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        if (parsed.expireAt <= now) {
+            return null;
+        }
+
+        //布隆过滤器判断可能已登出，查询redis确认
+        if (revokedTokens.score(parsed.id) != null) {
+            return null;
+        }
+        //用户退出全部登录，截止时间之前签发的token失效(签发时间 = 过期时间 - 有效期，截止时间同理)
+        Double revokedUntil = revokedUsers.score(parsed.user.getId());
+        if (revokedUntil != null && parsed.expireAt <= revokedUntil) {
+            return null;
+        }
+
+        //剩余有效期低于阈值，签发新token
+        if (parsed.expireAt - now < TimeUnit.MINUTES.toMillis(refreshThreshold)) {
+            long expireAt = now + TimeUnit.MINUTES.toMillis(ttl);
+            response.setHeader(RENEWED_TOKEN_HEADER, sign(new Token(parsed.id, parsed.user, expireAt)));
+        }
+        return parsed.user;
+    }
+
+    /**
+     * 记录已登出的token id，保留到token过期
+     */
+    @Override
+    public void invalidate(String token) {
+        Token parsed = verify(token);
+        if (parsed == null) {
+            return;
+        }
+        //续期后的token共用token id，按最长有效期保留
+        revokedTokens.add(parsed.id, Math.max(parsed.expireAt, System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(ttl)));
+    }
+
+    /**
+     * 记录退出时间，此前签发的token全部失效；无状态token无法限制会话数量
+     */
+    @Override
+    public void invalidateAll(Long userId) {
+        revokedUsers.add(userId, System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(ttl));
+    }
+
+    private String sign(Token token) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            out.writeLong(token.id);
+            out.writeLong(token.expireAt);
+            out.writeLong(token.user.getId());
+            out.writeUTF(StrUtil.nullToEmpty(token.user.getNickName()));
+            out.writeUTF(StrUtil.nullToEmpty(token.user.getIcon()));
+            out.flush();
+            String payload = ENCODER.encodeToString(bytes.toByteArray());
+            return payload + "." + ENCODER.encodeToString(hmac(payload));
+        } catch (IOException e) {
+            throw new IllegalStateException("签发token失败", e);
+        }
+    }
+
+    /**
+     * 校验签名并解析token
+     * @return 格式或签名错误时返回空
+     */
+    private Token verify(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        String payload = token.substring(0, dot);
+        try {
+            byte[] signature = DECODER.decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(signature, hmac(payload))) {
+                return null;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(DECODER.decode(payload)));
+            if (in.readByte() != VERSION) {
+                return null;
+            }
+            long id = in.readLong();
+            long expireAt = in.readLong();
+            UserDTO user = new UserDTO();
+            user.setId(in.readLong());
+            user.setNickName(in.readUTF());
+            user.setIcon(in.readUTF());
+            return new Token(id, user, expireAt);
+        } catch (IllegalArgumentException | IOException e) {
+            return null;
+        }
+    }
+
+    private byte[] hmac(String payload) {
+        return mac.get().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * redis zset(score为保留截止时间) + 本地布隆过滤器，布隆过滤器判断可能存在时才查询redis
+     */
+    private class RevocationList {
+        private final String key;
+        private final String channel;
+        private volatile LocalBloomFilter filter = new LocalBloomFilter(expectedInsertions, fpp);
+        //重建中的布隆过滤器，重建期间收到的消息同时写入
+        private volatile LocalBloomFilter rebuilding;
+
+        private RevocationList(String key, String channel) {
+            this.key = key;
+            this.channel = channel;
+            //收到其他节点的消息，加入本地布隆过滤器
+            redisMessageListenerContainer.addMessageListener(
+                    (message, pattern) -> addLocal(Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8))),
+                    new ChannelTopic(channel));
+        }
+
+        private void add(long id, long keepUntil) {
+            stringRedisTemplate.opsForZSet().add(key, String.valueOf(id), keepUntil);
+            addLocal(id);
+            stringRedisTemplate.convertAndSend(channel, String.valueOf(id));
+        }
+
+        /**
+         * @return 保留截止时间，不存在时返回空
+         */
+        private Double score(long id) {
+            if (!filter.mightContain(id)) {
+                return null;
+            }
+            return stringRedisTemplate.opsForZSet().score(key, String.valueOf(id));
+        }
+
+        private void addLocal(long id) {
+            filter.add(id);
+            LocalBloomFilter next = rebuilding;
+            if (next != null) {
+                next.add(id);
+            }
+        }
+
+        /**
+         * 清理已过期的记录，根据redis重建布隆过滤器
+         */
+        private void rebuild() {
+            try {
+                long now = System.currentTimeMillis();
+                stringRedisTemplate.opsForZSet().removeRangeByScore(key, 0, now);
+                LocalBloomFilter next = new LocalBloomFilter(expectedInsertions, fpp);
+                rebuilding = next;
+                Set<String> ids = stringRedisTemplate.opsForZSet().rangeByScore(key, now, Double.MAX_VALUE);
+                if (ids != null) {
+                    for (String id : ids) {
+                        next.add(Long.parseLong(id));
+                    }
+                }
+                filter = next;
+                log.debug("重建布隆过滤器: {}, 数量: {}", key, ids == null ? 0 : ids.size());
+            } catch (Exception e) {
+                log.error("重建布隆过滤器失败: {}", key, e);
+            } finally {
+                rebuilding = null;
+            }
+        }
+    }
+
+    private static class Token {
+        private final long id;
+        private final UserDTO user;
+        private final long expireAt;
+
+        private Token(long id, UserDTO user, long expireAt) {
+            this.id = id;
+            this.user = user;
+            this.expireAt = expireAt;
+        }
+    }
+}
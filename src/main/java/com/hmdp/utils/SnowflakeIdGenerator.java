@@ -0,0 +1,192 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.RuntimeUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.ID_WORKER_KEY;
+
+/**
+ * 本地雪花id生成器，启动时从redis租用worker id，之后生成id不访问网络
+ * [1]符号位 -- 0
+ * [41] 毫秒时间戳
+ * [10] worker id
+ * [12] 毫秒内序号
+ * 注意：与RedisIdGenerator([31]秒级时间戳 + [32]自增)的数值区间重叠，当前的雪花id约等于距开始时间2.3%之前生成的redis id，
+ * 已有订单数据的库不能直接切换生成器，否则可能主键冲突；切换前需迁移历史订单id或使用新表
+ * 续期失败超过租约有效期减去一个续期周期后拒绝生成id，防止租约过期后与其他节点使用同一个worker id
+ */
+@Slf4j
+@Primary
+@Component
+@ConditionalOnProperty(name = "hmdp.id.generator", havingValue = "snowflake")
+public class SnowflakeIdGenerator implements IdGenerator {
+
+    //开始时间(ms)
+    private static final long BEGIN_TIME = 1640995200000L;
+
+    private static final int WORKER_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_WORKER = (1L << WORKER_BITS) - 1;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+    //允许的最大时钟回拨(ms)，回拨范围内沿用上次的时间戳
+    private static final long MAX_BACKWARD_MS = 5L;
+
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT;
+
+    static {
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("id_worker_renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+        RELEASE_SCRIPT = new DefaultRedisScript<>();
+        RELEASE_SCRIPT.setLocation(new ClassPathResource("id_worker_release.lua"));
+        RELEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    //worker id租约有效期(s)
+    @Value("${hmdp.id.worker-lease:30}")
+    private long workerLease;
+
+    //租约持有者标识
+    private final String owner = NetUtil.getLocalHostName() + "-" + RuntimeUtil.getPid() + "-" + RandomUtil.randomString(6);
+
+    private volatile long workerId = -1;
+
+    //最近一次成功租用或续期的时间(System.nanoTime)，以发起请求的时间为准
+    private volatile long leaseRenewedAt;
+
+    //高位为相对时间戳，低12位为序号
+    private final AtomicLong state = new AtomicLong();
+
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor();
+
+    @PostConstruct
+    private void init() {
+        workerId = acquireWorker();
+        heartbeat.scheduleWithFixedDelay(this::renewWorker, renewPeriod(), renewPeriod(), TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        heartbeat.shutdown();
+        stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(ID_WORKER_KEY + workerId), owner);
+        log.info("释放worker id: {}", workerId);
+    }
+
+    /**
+     * 生成id，所有前缀共用一个序列，id全局唯一
+     */
+    @Override
+    public long nextId(String prefix) {
+        checkLease();
+        while (true) {
+            long old = state.get();
+            long lastTime = old >>> SEQUENCE_BITS;
+            long now = currentTimeMillis() - BEGIN_TIME;
+
+            long time;
+            long sequence;
+            if (now > lastTime) {
+                time = now;
+                sequence = 0;
+            } else {
+                //同一毫秒或时钟回拨，沿用上次的时间戳
+                if (lastTime - now > MAX_BACKWARD_MS) {
+                    throw new RuntimeException("时钟回拨, 拒绝生成id: " + (lastTime - now) + "ms");
+                }
+                time = lastTime;
+                sequence = (old & MAX_SEQUENCE) + 1;
+                if (sequence > MAX_SEQUENCE) {
+                    //毫秒内序号用完，等待下一毫秒
+                    Thread.yield();
+                    continue;
+                }
+            }
+
+            if (state.compareAndSet(old, (time << SEQUENCE_BITS) | sequence)) {
+                return (time << (WORKER_BITS + SEQUENCE_BITS)) | (workerId << SEQUENCE_BITS) | sequence;
+            }
+        }
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * 续期周期(s)，租约有效期内可以续期失败一次
+     */
+    private long renewPeriod() {
+        return Math.max(1L, workerLease / 3);
+    }
+
+    /**
+     * 租约可能已过期时拒绝生成id
+     */
+    private void checkLease() {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - leaseRenewedAt);
+        if (elapsed > TimeUnit.SECONDS.toMillis(workerLease - renewPeriod())) {
+            throw new RuntimeException("worker id租约" + elapsed + "ms未续期, 拒绝生成id");
+        }
+    }
+
+    /**
+     * 从随机位置开始尝试租用空闲的worker id
+     */
+    private long acquireWorker() {
+        int start = RandomUtil.randomInt((int) MAX_WORKER + 1);
+        for (int i = 0; i <= MAX_WORKER; i++) {
+            long id = (start + i) & MAX_WORKER;
+            long begin = System.nanoTime();
+            Boolean success = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(ID_WORKER_KEY + id, owner, workerLease, TimeUnit.SECONDS);
+            if (Boolean.TRUE.equals(success)) {
+                leaseRenewedAt = begin;
+                log.info("租用worker id: {}", id);
+                return id;
+            }
+        }
+        throw new RuntimeException("没有空闲的worker id");
+    }
+
+    /**
+     * 续期租约，租约丢失时重新租用，防止与其他节点使用同一个worker id
+     */
+    private void renewWorker() {
+        try {
+            long begin = System.nanoTime();
+            Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT,
+                    Collections.singletonList(ID_WORKER_KEY + workerId), owner, String.valueOf(workerLease));
+            if (renewed == null || renewed == 0) {
+                log.error("worker id租约丢失: {}", workerId);
+                workerId = acquireWorker();
+            } else {
+                leaseRenewedAt = begin;
+            }
+        } catch (Exception e) {
+            log.error("续期worker id异常", e);
+        }
+    }
+}
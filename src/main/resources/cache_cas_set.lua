@@ -0,0 +1,13 @@
+-- 按版本写入缓存，读取数据库后版本已变化(期间缓存被删除)时放弃写入，防止旧数据覆盖
+-- KEYS[1] 缓存key, KEYS[2] 版本key
+-- ARGV[1] 数据, ARGV[2] 读取数据库前的版本, ARGV[3] 有效期(ms)，0表示不过期
+local version = redis.call('get', KEYS[2]) or '0'
+if version ~= ARGV[2] then
+    return 0
+end
+if tonumber(ARGV[3]) > 0 then
+    redis.call('set', KEYS[1], ARGV[1], 'PX', ARGV[3])
+else
+    redis.call('set', KEYS[1], ARGV[1])
+end
+return 1
@@ -0,0 +1,5 @@
+-- 释放worker id租约，只有持有者才能释放
+if redis.call('get', KEYS[1]) == ARGV[1] then
+    return redis.call('del', KEYS[1])
+end
+return 0
@@ -0,0 +1,5 @@
+-- 续期worker id租约，只有持有者才能续期
+if redis.call('get', KEYS[1]) == ARGV[1] then
+    return redis.call('expire', KEYS[1], ARGV[2])
+end
+return 0
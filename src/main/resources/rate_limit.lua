@@ -0,0 +1,23 @@
+-- 滑动窗口限流(当前窗口计数 + 上一窗口按剩余比例加权)，多个规则全部通过才计数
+-- KEYS[i] 第i个规则的key前缀
+-- ARGV[1] 当前时间(ms), ARGV[2i] 第i个规则的上限, ARGV[2i+1] 第i个规则的窗口(ms)
+-- 返回 {0, 0}: 通过; {i, ms}: 第i个规则超限，ms后重试
+local now = tonumber(ARGV[1])
+local counters = {}
+for i, key in ipairs(KEYS) do
+    local limit = tonumber(ARGV[i * 2])
+    local window = tonumber(ARGV[i * 2 + 1])
+    local index = math.floor(now / window)
+    local current = tonumber(redis.call('get', key .. ':' .. index) or '0')
+    local previous = tonumber(redis.call('get', key .. ':' .. (index - 1)) or '0')
+    local elapsed = now % window
+    if previous * (window - elapsed) / window + current >= limit then
+        return {i, window - elapsed}
+    end
+    counters[i] = {key .. ':' .. index, window}
+end
+for _, counter in ipairs(counters) do
+    redis.call('incr', counter[1])
+    redis.call('pexpire', counter[1], counter[2] * 2)
+end
+return {0, 0}
@@ -0,0 +1,22 @@
+-- GCRA限流，每个key保存理论到达时间(TAT)，多个规则全部通过才更新
+-- KEYS[i] 第i个规则的key
+-- ARGV[1] 当前时间(ms), ARGV[2i] 第i个规则的发放间隔(ms), ARGV[2i+1] 第i个规则的突发容量
+-- 返回 {0, 0}: 通过; {i, ms}: 第i个规则超限，ms后重试
+local now = tonumber(ARGV[1])
+local tats = {}
+for i, key in ipairs(KEYS) do
+    local interval = tonumber(ARGV[i * 2])
+    local burst = tonumber(ARGV[i * 2 + 1])
+    local tat = math.max(tonumber(redis.call('get', key) or '0'), now)
+    local newTat = tat + interval
+    local allowAt = newTat - interval * burst
+    if now < allowAt then
+        -- lua数字转为redis整数时直接截断，向上取整避免返回0
+        return {i, math.ceil(allowAt - now)}
+    end
+    tats[i] = newTat
+end
+for i, key in ipairs(KEYS) do
+    redis.call('set', key, tats[i], 'px', math.ceil(tats[i] - now))
+end
+return {0, 0}
@@ -29,28 +29,62 @@
 --return 0
 --
 
+-- 返回 {0, 自增值}: 下单成功，使用订单id自增key时返回脚本内INCR的值; {1~4}: 失败
 local voucherId = ARGV[1]
 local userId = tostring(ARGV[2])
+-- 本地生成的订单id，为空时校验通过后INCR ARGV[5]，订单id = ARGV[6] | 自增值低32位
 local orderId = ARGV[3]
+local now = tonumber(ARGV[4])
+local counterKey = ARGV[5]
+local idBase = ARGV[6]
+
+-- 十进制字符串表示的大整数加上自增值的低32位，lua数字为double，超过2^53不能直接相加
+local function toOrderId(base, count)
+    count = count % 4294967296
+    local tail = tonumber(string.sub(base, -10)) + count
+    local head = (tonumber(string.sub(base, 1, -11)) or 0) + math.floor(tail / 10000000000)
+    tail = tail % 10000000000
+    if head == 0 then
+        return string.format('%.0f', tail)
+    end
+    return string.format('%.0f', head) .. string.format('%010.0f', tail)
+end
 
 local stockKey = 'seckill:stock:' .. voucherId
 local orderKey = 'seckill:order:' .. voucherId
+local windowKey = 'seckill:window:' .. voucherId
+
+-- 判断秒杀时间
+local window = redis.call('hmget', windowKey, 'begin', 'end')
+if window[1] and now < tonumber(window[1]) then
+    return {3}  -- 尚未开始
+end
+if window[2] and now > tonumber(window[2]) then
+    return {4}  -- 已经结束
+end
 
 -- 判断用户是否已下单
 if redis.call('sismember', orderKey, userId) == 1 then
-    return 2  -- 已下单
+    return {2}  -- 已下单
 end
 
 -- 获取库存
 local stock = tonumber(redis.call('get', stockKey))
 if not stock or stock <= 0 then
-    return 1  -- 库存不足
+    return {1}  -- 库存不足
 end
 
 -- 扣减库存并记录用户
 redis.call('decr', stockKey)
 redis.call('sadd', orderKey, userId)
 
+-- 校验通过后才分配订单id
+local count = 0
+if orderId == '' then
+    count = redis.call('incr', counterKey)
+    orderId = toOrderId(idBase, count)
+end
+
 --添加消息队列
 redis.call('xadd', 'stream.orders', '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
-return 0
+return {0, count}
@@ -0,0 +1,59 @@
+-- 分片库存秒杀脚本，所有KEYS使用相同的hash tag({shard:分片序号})，一次调用只访问一个cluster slot
+-- 扣减库存和发送订单消息在同一个脚本中完成，订单消息写入该分片自己的stream
+-- KEYS[1] 分片库存hash(stock, begin, end)
+-- KEYS[2] 分片下单用户set
+-- KEYS[3] 分片订单stream
+local stockKey = KEYS[1]
+local orderKey = KEYS[2]
+local queueKey = KEYS[3]
+-- home: 用户所在分片下单；borrow: 从兄弟分片借库存；release: 借库存失败，释放用户占位
+local action = ARGV[1]
+local userId = tostring(ARGV[2])
+local now = tonumber(ARGV[3])
+local voucherId = ARGV[4]
+-- 调用前生成的订单id，分片模式下计数器不在分片的slot内，不在脚本中自增
+local orderId = ARGV[5]
+-- 返回 {0}: 下单成功; {1}: 该分片售罄(borrow); {2}: 已下单; {3}: 尚未开始; {4}: 已经结束
+-- {5}: 所在分片售罄，已记录用户占位，需要向兄弟分片借库存
+
+-- 扣减库存并发送订单消息
+local function order()
+    redis.call('hincrby', stockKey, 'stock', -1)
+    redis.call('xadd', queueKey, '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
+    return {0}
+end
+
+if action == 'release' then
+    redis.call('srem', orderKey, userId)
+    return {0}
+end
+
+local shard = redis.call('hmget', stockKey, 'stock', 'begin', 'end')
+local stock = tonumber(shard[1])
+
+if action == 'borrow' then
+    if not stock or stock <= 0 then
+        return {1}  -- 库存不足
+    end
+    return order()
+end
+
+-- 判断秒杀时间
+if shard[2] and now < tonumber(shard[2]) then
+    return {3}  -- 尚未开始
+end
+if shard[3] and now > tonumber(shard[3]) then
+    return {4}  -- 已经结束
+end
+
+-- 判断用户是否已下单
+if redis.call('sismember', orderKey, userId) == 1 then
+    return {2}  -- 已下单
+end
+
+-- 记录用户，库存不足时作为借库存期间的占位
+redis.call('sadd', orderKey, userId)
+if stock and stock > 0 then
+    return order()
+end
+return {5}
@@ -0,0 +1,33 @@
+-- 创建会话，维护用户的会话索引，超过上限时删除最早的会话
+-- KEYS[1] 会话key, KEYS[2] 用户会话索引key(zset，score为创建时间)
+-- ARGV[1] token, ARGV[2] 当前时间(ms), ARGV[3] 有效期(s), ARGV[4] 每个用户最大会话数, ARGV[5] 会话key前缀
+-- ARGV[6..] 会话hash的field和value
+local token = ARGV[1]
+local max = tonumber(ARGV[4])
+local prefix = ARGV[5]
+
+-- 清理索引中已过期的会话
+local tokens = redis.call('zrange', KEYS[2], 0, -1)
+for _, t in ipairs(tokens) do
+    if redis.call('exists', prefix .. t) == 0 then
+        redis.call('zrem', KEYS[2], t)
+    end
+end
+
+-- 超过上限，删除最早的会话
+local evicted = {}
+local overflow = redis.call('zcard', KEYS[2]) - max + 1
+if overflow > 0 then
+    evicted = redis.call('zrange', KEYS[2], 0, overflow - 1)
+    for _, t in ipairs(evicted) do
+        redis.call('del', prefix .. t)
+    end
+    redis.call('zremrangebyrank', KEYS[2], 0, overflow - 1)
+end
+
+-- 保存会话
+redis.call('hmset', KEYS[1], unpack(ARGV, 6))
+redis.call('expire', KEYS[1], ARGV[3])
+redis.call('zadd', KEYS[2], ARGV[2], token)
+redis.call('expire', KEYS[2], ARGV[3])
+return evicted
@@ -0,0 +1,9 @@
+-- 删除用户的全部会话
+-- KEYS[1] 用户会话索引key
+-- ARGV[1] 会话key前缀
+local tokens = redis.call('zrange', KEYS[1], 0, -1)
+for _, t in ipairs(tokens) do
+    redis.call('del', ARGV[1] .. t)
+end
+redis.call('del', KEYS[1])
+return tokens
@@ -0,0 +1,147 @@
+package com.hmdp.interceptor;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.hmdp.entity.CacheOutbox;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.CacheOutboxMapper;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.utils.CacheOutboxPoller;
+import com.hmdp.utils.RedisUtils;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 缓存失效发件箱拦截器与轮询的H2测试
+ */
+class CacheOutboxInterceptorTest {
+
+    private SqlSession session;
+    private ShopMapper shopMapper;
+    private CacheOutboxMapper cacheOutboxMapper;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE tb_shop (id BIGINT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(128), "
+                    + "type_id BIGINT, images VARCHAR(1024), area VARCHAR(128), address VARCHAR(255), x DOUBLE, y DOUBLE, "
+                    + "avg_price BIGINT, sold INT, comments INT, score INT, open_hours VARCHAR(32), "
+                    + "create_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP, update_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+            statement.execute("CREATE TABLE tb_cache_outbox (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                    + "cache_key VARCHAR(255) NOT NULL, create_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+            statement.execute("INSERT INTO tb_shop (id, name, type_id, sold) VALUES (1, 'a', 1, 0), (2, 'b', 1, 0), (3, 'c', 2, 0)");
+        }
+
+        MybatisConfiguration configuration = new MybatisConfiguration();
+        configuration.setEnvironment(new Environment("test", new JdbcTransactionFactory(), dataSource));
+        configuration.addMapper(ShopMapper.class);
+        configuration.addMapper(CacheOutboxMapper.class);
+        configuration.addInterceptor(new CacheOutboxInterceptor(
+                Collections.singletonMap(ShopMapper.class.getName(), CACHE_SHOP_KEY)));
+        session = new MybatisSqlSessionFactoryBuilder().build(configuration).openSession(true);
+        shopMapper = session.getMapper(ShopMapper.class);
+        cacheOutboxMapper = session.getMapper(CacheOutboxMapper.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        session.close();
+    }
+
+    @Test
+    void updateByIdRecordsKey() {
+        shopMapper.updateById(new Shop().setId(1L).setName("x"));
+        assertEquals(Collections.singletonList(CACHE_SHOP_KEY + 1), outboxKeys());
+    }
+
+    @Test
+    void wrapperEqRecordsKey() {
+        shopMapper.update(null, new UpdateWrapper<Shop>().setSql("sold = sold + 1").eq("id", 2L));
+        assertEquals(Collections.singletonList(CACHE_SHOP_KEY + 2), outboxKeys());
+    }
+
+    @Test
+    void wrapperInRecordsKeys() {
+        shopMapper.update(null, new UpdateWrapper<Shop>()
+                .setSql("sold = sold + 1")
+                .eq("type_id", 1L)
+                .in("id", 1L, 2L));
+        assertEquals(Arrays.asList(CACHE_SHOP_KEY + 1, CACHE_SHOP_KEY + 2), outboxKeys());
+    }
+
+    @Test
+    void wrapperEntityRecordsKey() {
+        shopMapper.delete(new QueryWrapper<>(new Shop().setId(3L)));
+        assertEquals(Collections.singletonList(CACHE_SHOP_KEY + 3), outboxKeys());
+    }
+
+    @Test
+    void wrapperWithoutIdRecordsPrefix() {
+        shopMapper.update(null, new UpdateWrapper<Shop>().setSql("sold = sold + 1").eq("type_id", 1L));
+        assertEquals(Collections.singletonList(CACHE_SHOP_KEY), outboxKeys());
+    }
+
+    @Test
+    void wrapperWithOrRecordsPrefix() {
+        shopMapper.update(null, new UpdateWrapper<Shop>().setSql("sold = sold + 1")
+                .eq("id", 1L).or().eq("type_id", 2L));
+        assertEquals(Collections.singletonList(CACHE_SHOP_KEY), outboxKeys());
+    }
+
+    @Test
+    void unchangedRowsRecordNothing() {
+        shopMapper.update(null, new UpdateWrapper<Shop>().setSql("sold = sold + 1").eq("id", 99L));
+        assertTrue(outboxKeys().isEmpty());
+    }
+
+    @Test
+    void pollerDeletesRecordedKeys() {
+        shopMapper.update(null, new UpdateWrapper<Shop>().setSql("sold = sold + 1").eq("id", 1L));
+        shopMapper.deleteById(3L);
+
+        RedisUtils redisUtils = mock(RedisUtils.class);
+        CacheOutboxPoller poller = new CacheOutboxPoller();
+        ReflectionTestUtils.setField(poller, "cacheOutboxMapper", cacheOutboxMapper);
+        ReflectionTestUtils.setField(poller, "redisUtils", redisUtils);
+        ReflectionTestUtils.setField(poller, "batchSize", 500);
+        try {
+            assertEquals(2, poller.poll());
+            verify(redisUtils).deleteBatch(new LinkedHashSet<>(Arrays.asList(CACHE_SHOP_KEY + 1, CACHE_SHOP_KEY + 3)));
+            verify(redisUtils, never()).deleteByPrefix(anyString());
+            assertTrue(outboxKeys().isEmpty());
+            assertEquals(0, poller.poll());
+        } finally {
+            poller.stop();
+        }
+    }
+
+    private List<String> outboxKeys() {
+        return cacheOutboxMapper.selectList(new QueryWrapper<CacheOutbox>().orderByAsc("id")).stream()
+                .map(CacheOutbox::getCacheKey)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,203 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.utils.IdGenerator;
+import com.hmdp.utils.SeckillSoldOutRegistry;
+import com.hmdp.utils.UserHolder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SHARD_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_SHARD_QUEUE_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_SHARD_STOCK_KEY;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 秒杀入口的单元测试，redis脚本的返回值由mock给出
+ */
+class VoucherOrderSeckillTest {
+
+    private static final long VOUCHER_ID = 10L;
+    private static final long USER_ID = 1010L;
+
+    private StringRedisTemplate stringRedisTemplate;
+    private RedissonClient redissonClient;
+    private IdGenerator idGenerator;
+    private SeckillSoldOutRegistry soldOutRegistry;
+    private VoucherOrderServiceImpl voucherOrderService;
+
+    @BeforeEach
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        redissonClient = mock(RedissonClient.class);
+        idGenerator = mock(IdGenerator.class);
+        soldOutRegistry = new SeckillSoldOutRegistry();
+        voucherOrderService = new VoucherOrderServiceImpl();
+        ReflectionTestUtils.setField(voucherOrderService, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(voucherOrderService, "redissonClient", redissonClient);
+        ReflectionTestUtils.setField(voucherOrderService, "idGenerator", idGenerator);
+        ReflectionTestUtils.setField(voucherOrderService, "seckillSoldOutRegistry", soldOutRegistry);
+        ReflectionTestUtils.setField(voucherOrderService, "stockShards", 1);
+
+        UserDTO user = new UserDTO();
+        user.setId(USER_ID);
+        UserHolder.saveUser(user);
+    }
+
+    @AfterEach
+    void tearDown() {
+        UserHolder.removeUser();
+    }
+
+    @Test
+    void lockFreeByDefault() {
+        when(idGenerator.nextId("order")).thenReturn(42L);
+        scriptReturns(0L);
+
+        Result result = voucherOrderService.seckillVoucher(VOUCHER_ID);
+        assertTrue(result.getSuccess());
+        assertEquals(42L, result.getData());
+        verifyNoInteractions(redissonClient);
+    }
+
+    @Test
+    void userLockMode() {
+        ReflectionTestUtils.setField(voucherOrderService, "userLock", true);
+        RLock lock = mock(RLock.class);
+        when(redissonClient.getLock("lock:order:" + USER_ID)).thenReturn(lock);
+        when(lock.tryLock()).thenReturn(true, false);
+        when(idGenerator.nextId("order")).thenReturn(42L);
+        scriptReturns(0L);
+
+        assertTrue(voucherOrderService.seckillVoucher(VOUCHER_ID).getSuccess());
+        verify(lock).unlock();
+        assertEquals("不能重复下单", voucherOrderService.seckillVoucher(VOUCHER_ID).getErrorMsg());
+    }
+
+    @Test
+    void scriptCodes() {
+        scriptReturns(2L);
+        assertEquals("不能重复下单", voucherOrderService.seckillVoucher(VOUCHER_ID).getErrorMsg());
+        scriptReturns(3L);
+        assertEquals("秒杀尚未开始", voucherOrderService.seckillVoucher(VOUCHER_ID).getErrorMsg());
+        scriptReturns(4L);
+        assertEquals("秒杀已经结束", voucherOrderService.seckillVoucher(VOUCHER_ID).getErrorMsg());
+        assertFalse(soldOutRegistry.isSoldOut(VOUCHER_ID));
+    }
+
+    @Test
+    void soldOutMarkedLocally() {
+        scriptReturns(1L);
+        assertEquals("库存不足", voucherOrderService.seckillVoucher(VOUCHER_ID).getErrorMsg());
+        assertTrue(soldOutRegistry.isSoldOut(VOUCHER_ID));
+
+        //本地已售罄，不再执行脚本
+        assertEquals("库存不足", voucherOrderService.seckillVoucher(VOUCHER_ID).getErrorMsg());
+        verify(stringRedisTemplate, times(1)).execute(any(RedisScript.class), anyList(), (Object[]) any());
+    }
+
+    @Test
+    void scriptCounterAllocatesIdAfterChecks() {
+        when(idGenerator.scriptCounter("order")).thenReturn(new IdGenerator.ScriptCounter("icr:order:2026:10:17", 5L << 32));
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), (Object[]) any()))
+                .thenReturn(Arrays.asList(0L, 7L));
+
+        Result result = voucherOrderService.seckillVoucher(VOUCHER_ID);
+        assertEquals((5L << 32) | 7L, result.getData());
+        //脚本自增计数器，不预先分配id
+        verify(idGenerator, never()).nextId(anyString());
+        verify(stringRedisTemplate).execute(any(RedisScript.class), anyList(),
+                eq(String.valueOf(VOUCHER_ID)), eq(String.valueOf(USER_ID)), eq(""), anyString(),
+                eq("icr:order:2026:10:17"), eq(String.valueOf(5L << 32)));
+    }
+
+    @Test
+    void shardOrderUsesLocalId() {
+        ReflectionTestUtils.setField(voucherOrderService, "stockShards", 4);
+        when(idGenerator.nextId("order")).thenReturn(42L);
+        scriptReturns(0L);
+
+        assertEquals(42L, voucherOrderService.seckillVoucher(VOUCHER_ID).getData());
+        //用户所在分片为1010 % 4 = 2，脚本只访问该分片的key
+        verify(stringRedisTemplate).execute(any(RedisScript.class), eq(shardKeys(2)),
+                eq("home"), eq(String.valueOf(USER_ID)), anyString(), eq(String.valueOf(VOUCHER_ID)), eq("42"));
+        verify(idGenerator, never()).scriptCounter(anyString());
+    }
+
+    @Test
+    void shardBorrowSkipsEmptyShards() {
+        ReflectionTestUtils.setField(voucherOrderService, "stockShards", 4);
+        when(idGenerator.nextId("order")).thenReturn(42L);
+        soldOutRegistry.markShardEmpty(VOUCHER_ID, 3, 4);
+        //所在分片2售罄，本节点已记录分片3售罄，只向0借库存
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), (Object[]) any()))
+                .thenReturn(Collections.singletonList(5L))
+                .thenReturn(Collections.singletonList(0L));
+
+        Result result = voucherOrderService.seckillVoucher(VOUCHER_ID);
+        assertEquals(42L, result.getData());
+        verify(stringRedisTemplate).execute(any(RedisScript.class), eq(shardKeys(0)),
+                eq("borrow"), eq(String.valueOf(USER_ID)), anyString(), eq(String.valueOf(VOUCHER_ID)), eq("42"));
+        verify(stringRedisTemplate, times(2)).execute(any(RedisScript.class), anyList(), (Object[]) any());
+        assertTrue(soldOutRegistry.isShardEmpty(VOUCHER_ID, 2));
+        assertFalse(soldOutRegistry.isSoldOut(VOUCHER_ID));
+    }
+
+    @Test
+    void shardAllEmptyReleasesPlaceholder() {
+        ReflectionTestUtils.setField(voucherOrderService, "stockShards", 3);
+        //用户所在分片为1010 % 3 = 2，兄弟分片0、1都借不到
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), (Object[]) any()))
+                .thenReturn(Collections.singletonList(5L))
+                .thenReturn(Collections.singletonList(1L))
+                .thenReturn(Collections.singletonList(1L))
+                .thenReturn(Collections.singletonList(0L));
+
+        assertEquals("库存不足", voucherOrderService.seckillVoucher(VOUCHER_ID).getErrorMsg());
+        verify(stringRedisTemplate).execute(any(RedisScript.class), eq(shardKeys(2)),
+                eq("release"), eq(String.valueOf(USER_ID)), anyString(), anyString(), anyString());
+        verify(stringRedisTemplate, times(4)).execute(any(RedisScript.class), anyList(), (Object[]) any());
+        assertTrue(soldOutRegistry.isSoldOut(VOUCHER_ID));
+
+        //全部分片售罄后本地拒绝，不再执行脚本
+        assertEquals("库存不足", voucherOrderService.seckillVoucher(VOUCHER_ID).getErrorMsg());
+        verify(stringRedisTemplate, times(4)).execute(any(RedisScript.class), anyList(), (Object[]) any());
+    }
+
+    @Test
+    void replenishClearsEmptyShards() {
+        soldOutRegistry.markShardEmpty(VOUCHER_ID, 0, 2);
+        soldOutRegistry.markShardEmpty(VOUCHER_ID, 1, 2);
+        assertTrue(soldOutRegistry.isSoldOut(VOUCHER_ID));
+
+        ReflectionTestUtils.setField(soldOutRegistry, "stringRedisTemplate", stringRedisTemplate);
+        soldOutRegistry.publishReplenished(VOUCHER_ID);
+        assertFalse(soldOutRegistry.isSoldOut(VOUCHER_ID));
+        assertFalse(soldOutRegistry.isShardEmpty(VOUCHER_ID, 0));
+    }
+
+    private static List<String> shardKeys(int shard) {
+        String tag = "{shard:" + shard + "}";
+        return Arrays.asList(SECKILL_SHARD_STOCK_KEY + VOUCHER_ID + ":" + tag,
+                SECKILL_SHARD_ORDER_KEY + VOUCHER_ID + ":" + tag,
+                SECKILL_SHARD_QUEUE_KEY + tag);
+    }
+
+    private void scriptReturns(long code) {
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), (Object[]) any()))
+                .thenReturn(Collections.singletonList(code));
+    }
+}
@@ -0,0 +1,115 @@
+package com.hmdp.service.impl;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.mapper.VoucherOrderMapper;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 批量落库订单的H2测试
+ */
+class VoucherOrderServiceImplTest {
+
+    private SqlSession session;
+    private SeckillVoucherServiceImpl seckillVoucherService;
+    private VoucherOrderServiceImpl voucherOrderService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE tb_seckill_voucher (voucher_id BIGINT PRIMARY KEY, stock INT NOT NULL, "
+                    + "create_time TIMESTAMP, begin_time TIMESTAMP, end_time TIMESTAMP, update_time TIMESTAMP)");
+            statement.execute("CREATE TABLE tb_voucher_order (id BIGINT PRIMARY KEY, user_id BIGINT NOT NULL, "
+                    + "voucher_id BIGINT NOT NULL, pay_type TINYINT DEFAULT 1, status TINYINT DEFAULT 1, "
+                    + "create_time TIMESTAMP, pay_time TIMESTAMP, use_time TIMESTAMP, refund_time TIMESTAMP, update_time TIMESTAMP)");
+            statement.execute("INSERT INTO tb_seckill_voucher (voucher_id, stock) VALUES (10, 100), (11, 2)");
+        }
+
+        MybatisConfiguration configuration = new MybatisConfiguration();
+        configuration.setEnvironment(new Environment("test", new JdbcTransactionFactory(), dataSource));
+        configuration.addMapper(SeckillVoucherMapper.class);
+        //解析xml时绑定mapper接口
+        String resource = "mapper/VoucherOrderMapper.xml";
+        try (InputStream in = new ClassPathResource(resource).getInputStream()) {
+            new XMLMapperBuilder(in, configuration, resource, configuration.getSqlFragments()).parse();
+        }
+        session = new MybatisSqlSessionFactoryBuilder().build(configuration).openSession(true);
+
+        seckillVoucherService = new SeckillVoucherServiceImpl();
+        ReflectionTestUtils.setField(seckillVoucherService, "baseMapper", session.getMapper(SeckillVoucherMapper.class));
+        voucherOrderService = new VoucherOrderServiceImpl();
+        ReflectionTestUtils.setField(voucherOrderService, "baseMapper", session.getMapper(VoucherOrderMapper.class));
+        ReflectionTestUtils.setField(voucherOrderService, "seckillVoucherService", seckillVoucherService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        session.close();
+    }
+
+    @Test
+    void groupedDecrement() {
+        voucherOrderService.createVoucherOrders(Arrays.asList(order(1, 10), order(2, 10), order(3, 10)));
+        assertEquals(97, stock(10L));
+        assertEquals(Arrays.asList(1L, 2L, 3L), savedIds());
+        assertEquals(Integer.valueOf(1), voucherOrderService.getById(1L).getStatus());
+    }
+
+    @Test
+    void partialStockKeepsOrdersWithinStock() {
+        voucherOrderService.createVoucherOrders(Arrays.asList(order(1, 11), order(2, 11), order(3, 11), order(4, 10)));
+        assertEquals(0, stock(11L));
+        assertEquals(99, stock(10L));
+        assertEquals(Arrays.asList(1L, 2L, 4L), savedIds());
+    }
+
+    @Test
+    void redeliveredOrdersSkipped() {
+        voucherOrderService.createVoucherOrders(Arrays.asList(order(1, 10), order(2, 10)));
+        //重复投递，已落库的订单不再扣减库存
+        voucherOrderService.createVoucherOrders(Arrays.asList(order(2, 10), order(3, 10)));
+        assertEquals(97, stock(10L));
+        assertEquals(Arrays.asList(1L, 2L, 3L), savedIds());
+
+        voucherOrderService.createVoucherOrders(Collections.singletonList(order(3, 10)));
+        assertEquals(97, stock(10L));
+    }
+
+    private static VoucherOrder order(long id, long voucherId) {
+        return new VoucherOrder().setId(id).setUserId(1000 + id).setVoucherId(voucherId);
+    }
+
+    private int stock(long voucherId) {
+        return seckillVoucherService.getById(voucherId).getStock();
+    }
+
+    private List<Long> savedIds() {
+        return voucherOrderService.query().orderByAsc("id").list().stream()
+                .map(VoucherOrder::getId)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,134 @@
+package com.hmdp.utils;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactRedisSerializerTest {
+
+    private final GenericJackson2JsonRedisSerializer json = json();
+    private final CompactRedisSerializer compact = new CompactRedisSerializer(json, true);
+
+    /**
+     * 与RedisConfiguration中的json序列化配置一致
+     */
+    static GenericJackson2JsonRedisSerializer json() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        objectMapper.activateDefaultTyping(
+                objectMapper.getPolymorphicTypeValidator(),
+                ObjectMapper.DefaultTyping.NON_FINAL
+        );
+        return new GenericJackson2JsonRedisSerializer(objectMapper);
+    }
+
+    static Shop shop() {
+        return new Shop()
+                .setId(7L)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setImages("https://example.com/a.jpg,https://example.com/b.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39, 123000000))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+
+    @Test
+    void shopRoundTrip() {
+        Shop shop = shop();
+        byte[] bytes = compact.serialize(shop);
+        assertEquals((byte) 0xC1, bytes[0]);
+        assertTrue(bytes.length < json.serialize(shop).length);
+        assertEquals(shop, compact.deserialize(bytes));
+    }
+
+    @Test
+    void nullFieldsRoundTrip() {
+        Shop shop = new Shop().setId(1L);
+        assertEquals(shop, compact.deserialize(compact.serialize(shop)));
+    }
+
+    @Test
+    void redisDataRoundTrip() {
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(LocalDateTime.of(2026, 10, 17, 12, 0, 1, 5));
+        redisData.setRebuildCost(12L);
+        redisData.setData(shop());
+        RedisData read = (RedisData) compact.deserialize(compact.serialize(redisData));
+        assertEquals(redisData, read);
+    }
+
+    @Test
+    void userRoundTrip() {
+        UserDTO user = new UserDTO();
+        user.setId(1010L);
+        user.setNickName("可可今天不吃肉");
+        user.setIcon("/imgs/icons/kkjtbcr.jpg");
+        assertEquals(user, compact.deserialize(compact.serialize(user)));
+    }
+
+    @Test
+    void otherTypesStayJson() {
+        //标量和未手写编码的对象与json完全一致
+        assertArrayEquals(json.serialize(1010L), compact.serialize(1010L));
+        assertArrayEquals(json.serialize("abc"), compact.serialize("abc"));
+        RedisData redisData = new RedisData();
+        redisData.setData(Arrays.asList(1L, 2L));
+        redisData.setExpireTime(LocalDateTime.of(2026, 1, 1, 0, 0));
+        assertEquals(redisData, compact.deserialize(compact.serialize(redisData)));
+    }
+
+    @Test
+    void readsLegacyJson() {
+        Shop shop = shop();
+        assertEquals(shop, compact.deserialize(json.serialize(shop)));
+        RedisData redisData = new RedisData();
+        redisData.setData(shop);
+        redisData.setExpireTime(LocalDateTime.of(2026, 1, 1, 0, 0));
+        assertEquals(redisData, compact.deserialize(json.serialize(redisData)));
+    }
+
+    @Test
+    void writesJsonUntilCompactWriteEnabled() {
+        CompactRedisSerializer readOnly = new CompactRedisSerializer(json, false);
+        Shop shop = shop();
+        assertArrayEquals(json.serialize(shop), readOnly.serialize(shop));
+        //关闭写入时仍能读取二进制格式
+        assertEquals(shop, readOnly.deserialize(compact.serialize(shop)));
+    }
+
+    @Test
+    void unknownVersionIsRejected() {
+        byte[] bytes = compact.serialize(shop());
+        bytes[1] = 99;
+        assertThrows(SerializationException.class, () -> compact.deserialize(bytes));
+    }
+
+    @Test
+    void emptyInputIsNull() {
+        assertNull(compact.deserialize(null));
+        assertNull(compact.deserialize(new byte[0]));
+    }
+}
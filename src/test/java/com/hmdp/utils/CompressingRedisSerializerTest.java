@@ -0,0 +1,114 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressingRedisSerializerTest {
+
+    private final GenericJackson2JsonRedisSerializer json = CompactRedisSerializerTest.json();
+    private final CompactRedisSerializer compact = new CompactRedisSerializer(json, true);
+    private final CompressingRedisSerializer compressing = new CompressingRedisSerializer(compact, true, 256);
+
+    private static List<Shop> shops(int count) {
+        List<Shop> shops = new ArrayList<>(count);
+        for (long i = 0; i < count; i++) {
+            shops.add(CompactRedisSerializerTest.shop().setId(i));
+        }
+        return shops;
+    }
+
+    @Test
+    void largeValueIsCompressed() {
+        RedisData redisData = new RedisData();
+        redisData.setData(shops(20));
+        redisData.setExpireTime(LocalDateTime.of(2026, 1, 1, 0, 0));
+        byte[] bytes = compressing.serialize(redisData);
+        assertEquals((byte) 0xC2, bytes[0]);
+        assertTrue(bytes.length < compact.serialize(redisData).length);
+        assertEquals(redisData, compressing.deserialize(bytes));
+    }
+
+    @Test
+    void smallValueIsNotCompressed() {
+        Shop shop = new Shop().setId(1L).setName("小店");
+        byte[] bytes = compressing.serialize(shop);
+        assertArrayEquals(compact.serialize(shop), bytes);
+        assertEquals(shop, compressing.deserialize(bytes));
+    }
+
+    @Test
+    void incompressibleValueIsStoredRaw() {
+        //随机字节压缩后不会变小
+        byte[] random = new byte[2048];
+        new Random(1).nextBytes(random);
+        RedisSerializer<Object> raw = new RedisSerializer<Object>() {
+            @Override
+            public byte[] serialize(Object value) {
+                return random;
+            }
+
+            @Override
+            public Object deserialize(byte[] bytes) {
+                return bytes;
+            }
+        };
+        CompressingRedisSerializer serializer = new CompressingRedisSerializer(raw, true, 256);
+        byte[] bytes = serializer.serialize("value");
+        assertArrayEquals(random, bytes);
+        assertArrayEquals(random, (byte[]) serializer.deserialize(bytes));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> stats = (Map<String, Object>) serializer.metrics().get("String");
+        assertEquals(1L, stats.get("incompressible"));
+        assertEquals(0L, stats.get("compressed"));
+    }
+
+    @Test
+    void readsUncompressedAndLegacyJson() {
+        List<Shop> shops = shops(20);
+        assertEquals(shops, compressing.deserialize(json.serialize(shops)));
+        Shop shop = CompactRedisSerializerTest.shop();
+        assertEquals(shop, compressing.deserialize(compact.serialize(shop)));
+    }
+
+    @Test
+    void disabledOnlyDecompresses() {
+        CompressingRedisSerializer readOnly = new CompressingRedisSerializer(compact, false, 256);
+        List<Shop> shops = shops(20);
+        assertArrayEquals(compact.serialize(shops), readOnly.serialize(shops));
+        assertEquals(shops, readOnly.deserialize(compressing.serialize(shops)));
+    }
+
+    @Test
+    void metricsGroupRedisDataByPayloadType() {
+        RedisData redisData = new RedisData();
+        redisData.setData(CompactRedisSerializerTest.shop().setImages(String.join(",", Collections.nCopies(30, "https://example.com/a.jpg"))));
+        redisData.setExpireTime(LocalDateTime.of(2026, 1, 1, 0, 0));
+        compressing.serialize(redisData);
+        Map<String, Object> metrics = compressing.metrics();
+        assertTrue(metrics.containsKey("Shop"), metrics.toString());
+        assertFalse(metrics.containsKey("RedisData"));
+    }
+
+    @Test
+    void corruptedDataIsRejected() {
+        byte[] bytes = compressing.serialize(shops(20));
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length / 2);
+        assertThrows(SerializationException.class, () -> compressing.deserialize(truncated));
+        byte[] unknown = bytes.clone();
+        unknown[1] = 9;
+        assertThrows(SerializationException.class, () -> compressing.deserialize(unknown));
+    }
+}
@@ -0,0 +1,111 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class GcraRateLimiterTest {
+
+    //每秒10次，突发3次
+    private static final GcraRateLimiter.Rule RULE = GcraRateLimiter.Rule.of("test", "limit:test", 10, 1, TimeUnit.SECONDS, 3);
+
+    private StringRedisTemplate stringRedisTemplate;
+    private GcraRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        rateLimiter = new GcraRateLimiter();
+        ReflectionTestUtils.setField(rateLimiter, "stringRedisTemplate", stringRedisTemplate);
+    }
+
+    @Test
+    void tokenBucketBurstAndRefill() {
+        GcraRateLimiter.TokenBucket bucket = new GcraRateLimiter.TokenBucket(RULE, 1000L);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryAcquire(1000L, RULE));
+        }
+        assertEquals(100, bucket.tryAcquire(1000L, RULE));
+        //40ms后补充0.4个令牌
+        assertEquals(60, bucket.tryAcquire(1040L, RULE));
+        assertEquals(0, bucket.tryAcquire(1100L, RULE));
+        //补充不超过突发容量
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryAcquire(10_000L, RULE));
+        }
+        assertTrue(bucket.tryAcquire(10_000L, RULE) > 0);
+    }
+
+    @Test
+    void tokenBucketRelease() {
+        GcraRateLimiter.TokenBucket bucket = new GcraRateLimiter.TokenBucket(RULE, 1000L);
+        for (int i = 0; i < 3; i++) {
+            bucket.tryAcquire(1000L, RULE);
+        }
+        bucket.release();
+        assertEquals(0, bucket.tryAcquire(1000L, RULE));
+        assertTrue(bucket.tryAcquire(1000L, RULE) > 0);
+    }
+
+    @Test
+    void redisRejectionReleasesTokens() {
+        redisReturns(Arrays.asList(1L, 50L));
+        List<GcraRateLimiter.Rule> rules = Collections.singletonList(RULE);
+        for (int i = 0; i < 5; i++) {
+            RateLimitException e = assertThrows(RateLimitException.class, () -> rateLimiter.acquire(rules));
+            assertEquals(50L, e.getRetryAfterMillis());
+        }
+        //令牌都已归还，每次都由redis判断
+        verify(stringRedisTemplate, times(5)).execute(any(RedisScript.class), anyList(), (Object[]) any());
+        assertEquals(5L, stats().get("redisThrottled"));
+    }
+
+    @Test
+    void redisFailureReleasesTokens() {
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), (Object[]) any()))
+                .thenThrow(new RedisConnectionFailureException("down"));
+        List<GcraRateLimiter.Rule> rules = Collections.singletonList(RULE);
+        for (int i = 0; i < 5; i++) {
+            assertThrows(RedisConnectionFailureException.class, () -> rateLimiter.acquire(rules));
+        }
+
+        //redis恢复后本地令牌仍然可用
+        redisReturns(Arrays.asList(0L, 0L));
+        rateLimiter.acquire(rules);
+        assertEquals(1L, stats().get("allowed"));
+    }
+
+    @Test
+    void localRejectionSkipsRedis() {
+        redisReturns(Arrays.asList(0L, 0L));
+        List<GcraRateLimiter.Rule> rules = Collections.singletonList(
+                GcraRateLimiter.Rule.of("test", "limit:slow", 1, 1, TimeUnit.HOURS, 3));
+        for (int i = 0; i < 3; i++) {
+            rateLimiter.acquire(rules);
+        }
+        assertThrows(RateLimitException.class, () -> rateLimiter.acquire(rules));
+        verify(stringRedisTemplate, times(3)).execute(any(RedisScript.class), anyList(), (Object[]) any());
+        assertEquals(1L, stats().get("localThrottled"));
+    }
+
+    private void redisReturns(List<Long> result) {
+        doReturn(result).when(stringRedisTemplate).execute(any(RedisScript.class), anyList(), (Object[]) any());
+    }
+
+    private Map<String, Object> stats() {
+        return (Map<String, Object>) rateLimiter.metrics().get("test");
+    }
+}
@@ -0,0 +1,73 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalBloomFilterTest {
+
+    @Test
+    void sizing() {
+        //n = 1000, p = 0.01 -> m = 9586, k = 7
+        assertEquals("bitSize=9586, hashCount=7", new LocalBloomFilter(1000, 0.01).toString());
+    }
+
+    @Test
+    void noFalseNegatives() {
+        LocalBloomFilter filter = new LocalBloomFilter(10000, 0.001);
+        for (long i = 0; i < 10000; i++) {
+            filter.add(i * 7919);
+        }
+        for (long i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain(i * 7919));
+        }
+    }
+
+    @Test
+    void falsePositiveRate() {
+        LocalBloomFilter filter = new LocalBloomFilter(10000, 0.01);
+        for (long i = 0; i < 10000; i++) {
+            filter.add(i);
+        }
+        int falsePositives = 0;
+        for (long i = 1_000_000; i < 1_100_000; i++) {
+            if (filter.mightContain(i)) {
+                falsePositives++;
+            }
+        }
+        //期望约1000个，留出余量
+        assertTrue(falsePositives < 2000, "falsePositives=" + falsePositives);
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        LocalBloomFilter filter = new LocalBloomFilter(1000, 0.01);
+        for (long i = -500; i < 500; i++) {
+            assertFalse(filter.mightContain(i));
+        }
+    }
+
+    @Test
+    void concurrentAdds() throws InterruptedException {
+        LocalBloomFilter filter = new LocalBloomFilter(80000, 0.001);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            long from = t * 10000L;
+            pool.execute(() -> {
+                for (long i = from; i < from + 10000; i++) {
+                    filter.add(i);
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        //同一个long中的位并发设置不能丢失
+        for (long i = 0; i < 80000; i++) {
+            assertTrue(filter.mightContain(i));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RateLimiterTest {
+
+    private static final RateLimiter.Rule RULE = RateLimiter.Rule.of("limit:test", 3, 1, TimeUnit.SECONDS);
+
+    private StringRedisTemplate stringRedisTemplate;
+    private RateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        rateLimiter = new RateLimiter();
+        ReflectionTestUtils.setField(rateLimiter, "stringRedisTemplate", stringRedisTemplate);
+    }
+
+    @Test
+    void localWindowRejectsAtLimit() {
+        RateLimiter.LocalWindow window = new RateLimiter.LocalWindow();
+        long now = 10_000L + 200;
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, window.retryAfter(now, RULE));
+            window.increment(now, RULE);
+        }
+        //等到窗口结束
+        assertEquals(800, window.retryAfter(now, RULE));
+    }
+
+    @Test
+    void localWindowSlides() {
+        RateLimiter.LocalWindow window = new RateLimiter.LocalWindow();
+        for (int i = 0; i < 3; i++) {
+            window.increment(10_000L, RULE);
+        }
+        //下一个窗口过半，上一窗口按一半计入：3 * 0.5 + 1 = 2.5
+        long now = 11_500L;
+        window.increment(now, RULE);
+        assertEquals(0, window.retryAfter(now, RULE));
+        //3 * 0.5 + 2 = 3.5
+        window.increment(now, RULE);
+        assertEquals(500, window.retryAfter(now, RULE));
+        //上一窗口计数随时间衰减：3 * 0.1 + 2 = 2.3
+        assertEquals(0, window.retryAfter(11_900L, RULE));
+    }
+
+    @Test
+    void localWindowResetsAfterGap() {
+        RateLimiter.LocalWindow window = new RateLimiter.LocalWindow();
+        for (int i = 0; i < 3; i++) {
+            window.increment(10_000L, RULE);
+        }
+        //跳过一个完整窗口，之前的计数全部丢弃
+        assertEquals(0, window.retryAfter(12_000L, RULE));
+        window.increment(12_000L, RULE);
+        window.increment(12_000L, RULE);
+        assertEquals(0, window.retryAfter(12_000L, RULE));
+    }
+
+    @Test
+    void localRejectionSkipsRedis() {
+        redisReturns(Collections.singletonList(0L));
+        List<RateLimiter.Rule> rules = Collections.singletonList(RateLimiter.Rule.of("limit:test", 3, 1, TimeUnit.HOURS));
+        for (int i = 0; i < 3; i++) {
+            rateLimiter.acquire(rules);
+        }
+        RateLimitException e = assertThrows(RateLimitException.class, () -> rateLimiter.acquire(rules));
+        assertTrue(e.getRetryAfterMillis() > 0);
+        verify(stringRedisTemplate, times(3)).execute(any(RedisScript.class), anyList(), (Object[]) any());
+        assertEquals(3L, rateLimiter.metrics().get("allowed"));
+        assertEquals(1L, rateLimiter.metrics().get("localRejected"));
+    }
+
+    @Test
+    void redisRejectionReportsRule() {
+        redisReturns(Arrays.asList(2L, 1234L));
+        List<RateLimiter.Rule> rules = Arrays.asList(
+                RateLimiter.Rule.of("limit:phone", 3, 1, TimeUnit.HOURS),
+                RateLimiter.Rule.of("limit:ip", 3, 1, TimeUnit.HOURS));
+        RateLimitException e = assertThrows(RateLimitException.class, () -> rateLimiter.acquire(rules));
+        assertTrue(e.getMessage().endsWith("limit:ip"));
+        assertEquals(1234L, e.getRetryAfterMillis());
+        assertEquals(1L, rateLimiter.metrics().get("redisRejected"));
+
+        //被redis拒绝的请求不计入本地窗口
+        redisReturns(Collections.singletonList(0L));
+        for (int i = 0; i < 3; i++) {
+            rateLimiter.acquire(rules);
+        }
+    }
+
+    private void redisReturns(List<Long> result) {
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), (Object[]) any())).thenReturn(result);
+    }
+}
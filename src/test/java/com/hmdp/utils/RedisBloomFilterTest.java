@@ -0,0 +1,58 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 布隆过滤器的单元测试，redis bitmap的查询结果由mock给出
+ */
+class RedisBloomFilterTest {
+
+    private StringRedisTemplate stringRedisTemplate;
+    private RedisBloomFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        //执行pipeline回调写入本地镜像，redis中的位都未设置
+        when(stringRedisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+            ((RedisCallback<?>) invocation.getArgument(0)).doInRedis(mock(RedisConnection.class));
+            return Collections.nCopies(10, false);
+        });
+        filter = new RedisBloomFilter("bloom:test", null, 1000, 0.01, stringRedisTemplate);
+        filter.addAll(Arrays.asList(100L, 300L));
+        filter.markReady();
+    }
+
+    @Test
+    void lowerIdFallsThrough() {
+        //加载时还未提交的较小id，交给数据库判断
+        assertTrue(filter.mightContain(200L));
+        assertTrue(filter.mightContain(300L));
+        //大于已加载的最大id，查询redis后判断不存在
+        assertFalse(filter.mightContain(301L));
+    }
+
+    @Test
+    void addIfAbsentSkipsKnownIds() {
+        clearInvocations(stringRedisTemplate);
+        filter.addIfAbsent(100L);
+        verify(stringRedisTemplate, never()).executePipelined(any(RedisCallback.class));
+
+        filter.addIfAbsent(500L);
+        verify(stringRedisTemplate).executePipelined(any(RedisCallback.class));
+        assertTrue(filter.mightContain(500L));
+        //最大id随添加更新
+        assertTrue(filter.mightContain(400L));
+    }
+}
@@ -0,0 +1,109 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RedisIdGeneratorTest {
+
+    private final AtomicLong counter = new AtomicLong();
+    private final AtomicInteger incrCalls = new AtomicInteger();
+    private RedisIdGenerator generator;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RedisTemplate<String, Object> redisTemplate = mock(RedisTemplate.class);
+        ValueOperations<String, Object> ops = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(ops);
+        //模拟INCRBY
+        when(ops.increment(anyString(), anyLong())).thenAnswer(invocation -> {
+            incrCalls.incrementAndGet();
+            return counter.addAndGet(invocation.getArgument(1));
+        });
+        generator = new RedisIdGenerator();
+        ReflectionTestUtils.setField(generator, "redisTemplate", redisTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        generator.stop();
+    }
+
+    @Test
+    void incrementPerIdWithoutSegment() {
+        long first = generator.nextId("order");
+        long second = generator.nextId("order");
+        assertEquals(1, first & 0xFFFFFFFFL);
+        assertEquals(2, second & 0xFFFFFFFFL);
+        assertEquals(2, incrCalls.get());
+    }
+
+    @Test
+    void segmentHandsOffWithoutGapsOrDuplicates() {
+        ReflectionTestUtils.setField(generator, "segmentStep", 10L);
+        for (long i = 1; i <= 95; i++) {
+            assertEquals(i, generator.nextId("order") & 0xFFFFFFFFL);
+        }
+        //号段预取不会超过实际需要的下一个号段
+        assertTrue(incrCalls.get() <= 11, "INCRBY次数: " + incrCalls.get());
+    }
+
+    @Test
+    void nextSegmentIsPrefetchedBeforeCurrentRunsOut() throws InterruptedException {
+        ReflectionTestUtils.setField(generator, "segmentStep", 10L);
+        //消耗到80%触发异步预取
+        for (int i = 0; i < 9; i++) {
+            generator.nextId("order");
+        }
+        long deadline = System.currentTimeMillis() + 2000;
+        while (incrCalls.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(2, incrCalls.get());
+
+        //切换到预取的号段，不再同步INCRBY
+        generator.nextId("order");
+        assertEquals(11, generator.nextId("order") & 0xFFFFFFFFL);
+        assertEquals(2, incrCalls.get());
+    }
+
+    @Test
+    void concurrentCallersGetUniqueIds() throws InterruptedException {
+        ReflectionTestUtils.setField(generator, "segmentStep", 50L);
+        int threads = 8;
+        int perThread = 2000;
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    ids.add(generator.nextId("order") & 0xFFFFFFFFL);
+                }
+                latch.countDown();
+            });
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        pool.shutdown();
+        assertEquals(threads * perThread, ids.size());
+    }
+}
@@ -0,0 +1,190 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_VERSION_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_VERSION_TTL;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 按版本回填缓存的单元测试，cache_cas_set.lua的执行结果由mock给出
+ */
+class RedisUtilsTest {
+
+    private static final String KEY = CACHE_SHOP_KEY + 1;
+
+    private RedisTemplate<String, Object> redisTemplate;
+    private ValueOperations<String, Object> valueOperations;
+    private StringRedisTemplate stringRedisTemplate;
+    private ValueOperations<String, String> versionOperations;
+    private RedisUtils redisUtils;
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(redisTemplate.getValueSerializer()).thenReturn((RedisSerializer) RedisSerializer.java());
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        versionOperations = mock(ValueOperations.class);
+        when(stringRedisTemplate.opsForValue()).thenReturn(versionOperations);
+
+        redisUtils = new RedisUtils();
+        ReflectionTestUtils.setField(redisUtils, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(redisUtils, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(redisUtils, "redisMessageListenerContainer", mock(RedisMessageListenerContainer.class));
+        ReflectionTestUtils.setField(redisUtils, "bloomFilters", Collections.emptyList());
+        ReflectionTestUtils.setField(redisUtils, "localMaximumSize", 100L);
+        ReflectionTestUtils.setField(redisUtils, "localExpireAfterWrite", 60L);
+        ReflectionTestUtils.invokeMethod(redisUtils, "init");
+    }
+
+    @Test
+    void fillUsesVersionReadBeforeQuery() {
+        when(versionOperations.get(CACHE_VERSION_KEY + KEY)).thenReturn("3");
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(Collections.singletonList(1L));
+
+        Shop shop = query();
+        assertEquals(1L, shop.getId());
+
+        //脚本参数：数据、查询前的版本、有效期(ms)
+        RedisConnection connection = runPipeline();
+        verify(connection).eval(any(byte[].class), eq(ReturnType.INTEGER), eq(2),
+                eq(bytes(KEY)), eq(bytes(CACHE_VERSION_KEY + KEY)),
+                any(byte[].class), eq(bytes("3")), eq(bytes(String.valueOf(TimeUnit.MINUTES.toMillis(30)))));
+
+        //写入成功，本地缓存命中
+        assertEquals(1L, query().getId());
+        verify(valueOperations, times(1)).get(KEY);
+    }
+
+    @Test
+    void missingVersionDefaultsToZero() {
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(Collections.singletonList(1L));
+        query();
+
+        RedisConnection connection = runPipeline();
+        verify(connection).eval(any(byte[].class), eq(ReturnType.INTEGER), eq(2),
+                any(byte[].class), any(byte[].class), any(byte[].class), eq(bytes("0")), any(byte[].class));
+    }
+
+    @Test
+    void rejectedFillSkipsLocalCache() {
+        //查询期间缓存被删除，版本已变化，脚本放弃写入
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(Collections.singletonList(0L));
+
+        assertEquals(1L, query().getId());
+        assertEquals(1L, query().getId());
+        verify(valueOperations, times(2)).get(KEY);
+    }
+
+    @Test
+    void setIfUnchangedUsesGivenVersion() {
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(Collections.singletonList(1L));
+        redisUtils.setIfUnchanged(KEY, new Shop().setId(1L), "7", 10L, TimeUnit.SECONDS);
+
+        RedisConnection connection = runPipeline();
+        verify(connection).eval(any(byte[].class), eq(ReturnType.INTEGER), eq(2),
+                eq(bytes(KEY)), eq(bytes(CACHE_VERSION_KEY + KEY)),
+                any(byte[].class), eq(bytes("7")), eq(bytes("10000")));
+    }
+
+    @Test
+    void shopTypeVersionNeverExpires() {
+        redisUtils.deleteBatch(Arrays.asList(KEY, CACHE_SHOP_TYPE_KEY));
+
+        ArgumentCaptor<RedisCallback> callback = ArgumentCaptor.forClass(RedisCallback.class);
+        verify(stringRedisTemplate).executePipelined(callback.capture());
+        RedisConnection connection = mock(RedisConnection.class);
+        callback.getValue().doInRedis(connection);
+        verify(connection).expire(bytes(CACHE_VERSION_KEY + KEY), CACHE_VERSION_TTL);
+        //店铺类型的版本作为持久代数，不设置有效期
+        verify(connection).incr(bytes(CACHE_VERSION_KEY + CACHE_SHOP_TYPE_KEY));
+        verify(connection).persist(bytes(CACHE_VERSION_KEY + CACHE_SHOP_TYPE_KEY));
+        verify(connection, never()).expire(eq(bytes(CACHE_VERSION_KEY + CACHE_SHOP_TYPE_KEY)), anyLong());
+    }
+
+    @Test
+    void expiredLocalEntryRereadsRedis() {
+        //本节点缓存了过期数据，其他节点已重建redis中的数据
+        when(valueOperations.get(KEY)).thenReturn(redisData("旧", -1L), redisData("新", 30L));
+
+        assertEquals("新", queryLogicalExpire().getName());
+        //重新查询到未过期数据，不重建(未注入重建线程池)，本地缓存已更新
+        assertEquals("新", queryLogicalExpire().getName());
+        verify(valueOperations, times(2)).get(KEY);
+    }
+
+    private Shop queryLogicalExpire() {
+        return redisUtils.queryWithLogicalExpire(CACHE_SHOP_KEY, 1L, id -> new Shop().setId(id),
+                30L, TimeUnit.MINUTES, Shop.class);
+    }
+
+    private static RedisData redisData(String name, long minutes) {
+        RedisData redisData = new RedisData();
+        redisData.setData(new Shop().setId(1L).setName(name));
+        redisData.setExpireTime(LocalDateTime.now().plusMinutes(minutes));
+        return redisData;
+    }
+
+    @Test
+    void waiterRethrowsLoaderException() {
+        //本节点已有线程在加载该key，加载失败
+        CompletableFuture<Object> loading = new CompletableFuture<>();
+        loading.completeExceptionally(new IllegalStateException("db down"));
+        Map<String, CompletableFuture<Object>> futures =
+                (Map<String, CompletableFuture<Object>>) ReflectionTestUtils.getField(RedisUtils.class, "LOADING_FUTURES");
+        futures.put(KEY, loading);
+        try {
+            IllegalStateException e = assertThrows(IllegalStateException.class, () -> redisUtils.queryWithMutex(
+                    CACHE_SHOP_KEY, 1L, id -> new Shop().setId(id), 30L, TimeUnit.MINUTES, Shop.class));
+            assertEquals("db down", e.getMessage());
+        } finally {
+            futures.remove(KEY);
+        }
+    }
+
+    private Shop query() {
+        return redisUtils.queryWithPassThrough(CACHE_SHOP_KEY, 1L, id -> new Shop().setId(id),
+                30L, TimeUnit.MINUTES, Shop.class);
+    }
+
+    /**
+     * 对mock连接执行最近一次pipeline回调
+     */
+    private RedisConnection runPipeline() {
+        ArgumentCaptor<RedisCallback> callback = ArgumentCaptor.forClass(RedisCallback.class);
+        verify(redisTemplate, atLeastOnce()).executePipelined(callback.capture());
+        RedisConnection connection = mock(RedisConnection.class);
+        callback.getValue().doInRedis(connection);
+        return connection;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,113 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SessionCacheTest {
+
+    private static final String TOKEN = "token-1";
+
+    private RedisTemplate redisTemplate;
+    private StringRedisTemplate stringRedisTemplate;
+    private RedisMessageListenerContainer listenerContainer;
+    private SessionCache sessionCache;
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        listenerContainer = mock(RedisMessageListenerContainer.class);
+        sessionCache = new SessionCache();
+        ReflectionTestUtils.setField(sessionCache, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(sessionCache, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(sessionCache, "redisMessageListenerContainer", listenerContainer);
+        ReflectionTestUtils.setField(sessionCache, "localMaximumSize", 100L);
+        ReflectionTestUtils.setField(sessionCache, "localExpireAfterWrite", 60L);
+        ReflectionTestUtils.setField(sessionCache, "ttl", 60L);
+        ReflectionTestUtils.setField(sessionCache, "refreshThreshold", 50L);
+        ReflectionTestUtils.invokeMethod(sessionCache, "init");
+    }
+
+    @Test
+    void localHitSkipsRedis() {
+        redisHas(TimeUnit.MINUTES.toMillis(59));
+        assertEquals(1010L, sessionCache.get(TOKEN, new MockHttpServletResponse()).getId());
+        assertEquals(1010L, sessionCache.get(TOKEN, new MockHttpServletResponse()).getId());
+
+        verify(redisTemplate, times(1)).executePipelined(any(SessionCallback.class));
+        //剩余有效期高于阈值，不续期
+        verify(stringRedisTemplate, never()).executePipelined(any(RedisCallback.class));
+        Map<String, Object> metrics = sessionCache.metrics();
+        assertEquals(2L, metrics.get("requests"));
+        assertEquals(1L, metrics.get("localHits"));
+        assertEquals(2L, metrics.get("redisCommands"));
+    }
+
+    @Test
+    void renewsOnlyBelowThreshold() {
+        redisHas(TimeUnit.MINUTES.toMillis(5));
+        when(stringRedisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(Arrays.asList(true, true));
+
+        assertNotNull(sessionCache.get(TOKEN, new MockHttpServletResponse()));
+        //续期后本地记录的过期时间延长，不再续期
+        assertNotNull(sessionCache.get(TOKEN, new MockHttpServletResponse()));
+        verify(stringRedisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+    }
+
+    @Test
+    void renewFailureDropsSession() {
+        redisHas(TimeUnit.MINUTES.toMillis(5));
+        when(stringRedisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(Arrays.asList(false, false));
+
+        assertNull(sessionCache.get(TOKEN, new MockHttpServletResponse()));
+        //本地缓存已清除，再次查询redis
+        sessionCache.get(TOKEN, new MockHttpServletResponse());
+        verify(redisTemplate, times(2)).executePipelined(any(SessionCallback.class));
+    }
+
+    @Test
+    void missingSession() {
+        when(redisTemplate.executePipelined(any(SessionCallback.class))).thenReturn(Arrays.asList(new HashMap<>(), -2L));
+        assertNull(sessionCache.get(TOKEN, new MockHttpServletResponse()));
+    }
+
+    @Test
+    void logoutMessageClearsLocalCache() {
+        ArgumentCaptor<MessageListener> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(listenerContainer).addMessageListener(listener.capture(), any(Topic.class));
+        redisHas(TimeUnit.MINUTES.toMillis(59));
+        sessionCache.get(TOKEN, new MockHttpServletResponse());
+
+        listener.getValue().onMessage(new DefaultMessage(new byte[0], TOKEN.getBytes(StandardCharsets.UTF_8)), null);
+        sessionCache.get(TOKEN, new MockHttpServletResponse());
+        verify(redisTemplate, times(2)).executePipelined(any(SessionCallback.class));
+    }
+
+    private void redisHas(long remainingMillis) {
+        Map<Object, Object> user = new HashMap<>();
+        user.put("id", 1010L);
+        user.put("nickName", "小鱼同学");
+        when(redisTemplate.executePipelined(any(SessionCallback.class))).thenReturn(Arrays.asList(user, remainingMillis));
+    }
+}
@@ -0,0 +1,172 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKED_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKED_USER_KEY;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SignedSessionManagerTest {
+
+    private ZSetOperations<String, String> zSetOperations;
+    private SignedSessionManager manager;
+
+    //模拟redis中的zset，后台重建布隆过滤器时能读到已写入的记录
+    private final Map<String, Map<String, Double>> zSets = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        zSetOperations = mock(ZSetOperations.class);
+        when(zSetOperations.add(anyString(), anyString(), anyDouble())).thenAnswer(invocation -> {
+            zSet(invocation.getArgument(0)).put(invocation.getArgument(1), invocation.getArgument(2));
+            return true;
+        });
+        when(zSetOperations.score(anyString(), any()))
+                .thenAnswer(invocation -> zSet(invocation.getArgument(0)).get((String) invocation.getArgument(1)));
+        when(zSetOperations.rangeByScore(anyString(), anyDouble(), anyDouble()))
+                .thenAnswer(invocation -> new HashSet<>(zSet(invocation.getArgument(0)).keySet()));
+        manager = newManager("secret-a", 60);
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.stop();
+    }
+
+    @Test
+    void signAndVerify() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        UserDTO user = manager.get(manager.create(user()), response);
+        assertNotNull(user);
+        assertEquals(1010L, user.getId());
+        assertEquals("小鱼同学", user.getNickName());
+        assertEquals("", user.getIcon());
+        //剩余有效期高于阈值，不续期
+        assertNull(response.getHeader(SignedSessionManager.RENEWED_TOKEN_HEADER));
+        //布隆过滤器中没有，不查询redis
+        verify(zSetOperations, never()).score(anyString(), anyString());
+    }
+
+    @Test
+    void tamperedTokenRejected() {
+        String token = manager.create(user());
+        int dot = token.indexOf('.');
+        //末尾字符可能只含填充位，修改中间和签名首字符
+        String tamperedPayload = flip(token, dot / 2);
+        String tamperedSignature = flip(token, dot + 1);
+
+        assertNull(manager.get(tamperedPayload, new MockHttpServletResponse()));
+        assertNull(manager.get(tamperedSignature, new MockHttpServletResponse()));
+        assertNull(manager.get(token.substring(0, dot), new MockHttpServletResponse()));
+        assertNull(manager.get("not-base64!." + token.substring(dot + 1), new MockHttpServletResponse()));
+    }
+
+    @Test
+    void otherSecretRejected() {
+        SignedSessionManager other = newManager("secret-b", 60);
+        try {
+            assertNull(manager.get(other.create(user()), new MockHttpServletResponse()));
+        } finally {
+            other.stop();
+        }
+    }
+
+    @Test
+    void expiredTokenRejected() {
+        SignedSessionManager expired = newManager("secret-a", 0);
+        try {
+            //有效期为0，签发时即过期；密钥相同，签名校验通过
+            assertNull(manager.get(expired.create(user()), new MockHttpServletResponse()));
+        } finally {
+            expired.stop();
+        }
+    }
+
+    @Test
+    void renewsNearExpiry() {
+        ReflectionTestUtils.setField(manager, "refreshThreshold", 61L);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertNotNull(manager.get(manager.create(user()), response));
+
+        String renewed = response.getHeader(SignedSessionManager.RENEWED_TOKEN_HEADER);
+        assertNotNull(renewed);
+        assertEquals(1010L, manager.get(renewed, new MockHttpServletResponse()).getId());
+    }
+
+    @Test
+    void invalidatedTokenRejected() {
+        String token = manager.create(user());
+        String other = manager.create(user());
+        manager.invalidate(token);
+        assertEquals(Collections.singleton(tokenId(token)), zSet(LOGIN_REVOKED_KEY).keySet());
+
+        assertNull(manager.get(token, new MockHttpServletResponse()));
+        assertNotNull(manager.get(other, new MockHttpServletResponse()));
+    }
+
+    @Test
+    void invalidateAllRejectsEarlierTokens() {
+        String token = manager.create(user());
+        manager.invalidateAll(1010L);
+        assertTrue(zSet(LOGIN_REVOKED_USER_KEY).containsKey("1010"));
+
+        assertNull(manager.get(token, new MockHttpServletResponse()));
+    }
+
+    private SignedSessionManager newManager(String secret, long ttl) {
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        when(stringRedisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        SignedSessionManager sessionManager = new SignedSessionManager();
+        ReflectionTestUtils.setField(sessionManager, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(sessionManager, "redisMessageListenerContainer", mock(RedisMessageListenerContainer.class));
+        ReflectionTestUtils.setField(sessionManager, "secret", secret);
+        ReflectionTestUtils.setField(sessionManager, "ttl", ttl);
+        ReflectionTestUtils.setField(sessionManager, "refreshThreshold", 50L);
+        ReflectionTestUtils.setField(sessionManager, "expectedInsertions", 1000L);
+        ReflectionTestUtils.setField(sessionManager, "fpp", 0.001);
+        ReflectionTestUtils.setField(sessionManager, "rebuildInterval", 600L);
+        ReflectionTestUtils.invokeMethod(sessionManager, "init");
+        return sessionManager;
+    }
+
+    /**
+     * 从payload中读取token id(版本号之后的8个字节)
+     */
+    private static String tokenId(String token) {
+        byte[] payload = Base64.getUrlDecoder().decode(token.substring(0, token.indexOf('.')));
+        return String.valueOf(ByteBuffer.wrap(payload, 1, 8).getLong());
+    }
+
+    private Map<String, Double> zSet(String key) {
+        return zSets.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+    }
+
+    private static String flip(String token, int index) {
+        char c = token.charAt(index);
+        return token.substring(0, index) + (c == 'A' ? 'B' : 'A') + token.substring(index + 1);
+    }
+
+    private static UserDTO user() {
+        UserDTO user = new UserDTO();
+        user.setId(1010L);
+        user.setNickName("小鱼同学");
+        return user;
+    }
+}
@@ -0,0 +1,109 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnowflakeIdGeneratorTest {
+
+    private static final long BEGIN_TIME = 1640995200000L;
+    private static final long WORKER_ID = 617;
+
+    private final AtomicLong clock = new AtomicLong(BEGIN_TIME + 123456789L);
+    private SnowflakeIdGenerator generator;
+
+    @BeforeEach
+    void setUp() {
+        generator = new SnowflakeIdGenerator() {
+            @Override
+            long currentTimeMillis() {
+                return clock.get();
+            }
+        };
+        ReflectionTestUtils.setField(generator, "workerId", WORKER_ID);
+        ReflectionTestUtils.setField(generator, "workerLease", 30L);
+        ReflectionTestUtils.setField(generator, "leaseRenewedAt", System.nanoTime());
+    }
+
+    @Test
+    void bitLayout() {
+        long id = generator.nextId("order");
+        assertTrue(id > 0);
+        assertEquals(clock.get() - BEGIN_TIME, id >>> 22);
+        assertEquals(WORKER_ID, (id >>> 12) & 1023);
+        assertEquals(0, id & 4095);
+
+        long second = generator.nextId("order");
+        assertEquals(1, second & 4095);
+        assertEquals(id >>> 22, second >>> 22);
+    }
+
+    @Test
+    void sequenceResetsOnNextMillisecond() {
+        generator.nextId("order");
+        generator.nextId("order");
+        clock.incrementAndGet();
+        long id = generator.nextId("order");
+        assertEquals(clock.get() - BEGIN_TIME, id >>> 22);
+        assertEquals(0, id & 4095);
+    }
+
+    @Test
+    void smallClockRegressionKeepsLastTimestamp() {
+        long first = generator.nextId("order");
+        clock.addAndGet(-5);
+        long second = generator.nextId("order");
+        assertTrue(second > first);
+        assertEquals(first >>> 22, second >>> 22);
+    }
+
+    @Test
+    void largeClockRegressionIsRejected() {
+        generator.nextId("order");
+        clock.addAndGet(-6);
+        assertThrows(RuntimeException.class, () -> generator.nextId("order"));
+        //时钟追上后恢复
+        clock.addAndGet(7);
+        assertEquals(clock.get() - BEGIN_TIME, generator.nextId("order") >>> 22);
+    }
+
+    @Test
+    void sequenceOverflowWaitsForNextMillisecond() {
+        long time = clock.get();
+        SnowflakeIdGenerator overflow = new SnowflakeIdGenerator() {
+            private int calls;
+
+            @Override
+            long currentTimeMillis() {
+                //序号用完后时钟前进
+                return ++calls <= 4097 ? time : time + 1;
+            }
+        };
+        ReflectionTestUtils.setField(overflow, "workerId", WORKER_ID);
+        ReflectionTestUtils.setField(overflow, "workerLease", 30L);
+        ReflectionTestUtils.setField(overflow, "leaseRenewedAt", System.nanoTime());
+        long last = 0;
+        for (int i = 0; i < 4096; i++) {
+            last = overflow.nextId("order");
+        }
+        assertEquals(4095, last & 4095);
+        long next = overflow.nextId("order");
+        assertEquals(time + 1 - BEGIN_TIME, next >>> 22);
+        assertEquals(0, next & 4095);
+    }
+
+    @Test
+    void expiredLeaseIsRejected() {
+        //租约30s，续期周期10s，超过20s未续期拒绝生成
+        ReflectionTestUtils.setField(generator, "leaseRenewedAt", System.nanoTime() - TimeUnit.SECONDS.toNanos(21));
+        assertThrows(RuntimeException.class, () -> generator.nextId("order"));
+
+        ReflectionTestUtils.setField(generator, "leaseRenewedAt", System.nanoTime() - TimeUnit.SECONDS.toNanos(19));
+        assertTrue(generator.nextId("order") > 0);
+    }
+}